@@ -0,0 +1,95 @@
+package study.querydsl.bench;
+
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import study.querydsl.QuerydslApplication;
+
+import javax.persistence.EntityManagerFactory;
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 벤치마크용 스프링 컨텍스트.
+ * 인메모리 H2 에 스키마를 만들고, 필요하면 JDBC 배치 insert 로 데이터를 채운다.
+ * 로컬 프로파일(InitMember)과 SQL 로그는 끈다.
+ */
+public class BenchmarkContext implements AutoCloseable {
+
+    private static final int TEAM_COUNT = 10;
+    private static final int BATCH_SIZE = 1_000;
+
+    private final ConfigurableApplicationContext context;
+
+    private BenchmarkContext(ConfigurableApplicationContext context) {
+        this.context = context;
+    }
+
+    public static BenchmarkContext start(String name, String... extraArgs) {
+        List<String> args = new ArrayList<>(Arrays.asList(
+                "--spring.profiles.active=jmh",
+                "--spring.datasource.url=jdbc:h2:mem:" + name + ";DB_CLOSE_DELAY=-1",
+                "--spring.jpa.hibernate.ddl-auto=create",
+                "--spring.jpa.properties.hibernate.format_sql=false",
+                "--spring.jpa.properties.hibernate.use_sql_comments=false",
+                "--logging.level.org.hibernate.SQL=warn",
+                "--logging.level.org.hibernate.type=warn"));
+        args.addAll(Arrays.asList(extraArgs));
+
+        ConfigurableApplicationContext context = new SpringApplicationBuilder(QuerydslApplication.class)
+                .web(WebApplicationType.NONE)
+                .run(args.toArray(new String[0]));
+        return new BenchmarkContext(context);
+    }
+
+    public EntityManagerFactory entityManagerFactory() {
+        return context.getBean(EntityManagerFactory.class);
+    }
+
+    public <T> T getBean(Class<T> type) {
+        return context.getBean(type);
+    }
+
+    /**
+     * 팀 10개에 회원을 고르게 나눠 넣는다. id 는 1부터 직접 채번한다.
+     */
+    public void seed(int rows) throws SQLException {
+        DataSource dataSource = context.getBean(DataSource.class);
+        try (Connection connection = dataSource.getConnection()) {
+            connection.setAutoCommit(false);
+            try (PreparedStatement team = connection.prepareStatement("insert into team (id, name) values (?, ?)")) {
+                for (int i = 1; i <= TEAM_COUNT; i++) {
+                    team.setLong(1, i);
+                    team.setString(2, "team" + i);
+                    team.addBatch();
+                }
+                team.executeBatch();
+            }
+            try (PreparedStatement member = connection.prepareStatement(
+                    "insert into member (member_id, username, age, team_id) values (?, ?, ?, ?)")) {
+                for (int i = 1; i <= rows; i++) {
+                    member.setLong(1, i);
+                    member.setString(2, "member" + i);
+                    member.setInt(3, i % 100);
+                    member.setLong(4, (i % TEAM_COUNT) + 1);
+                    member.addBatch();
+                    if (i % BATCH_SIZE == 0) {
+                        member.executeBatch();
+                    }
+                }
+                member.executeBatch();
+            }
+            connection.commit();
+        }
+    }
+
+    @Override
+    public void close() {
+        context.close();
+    }
+}
@@ -0,0 +1,78 @@
+package study.querydsl.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import study.querydsl.entity.Member;
+import study.querydsl.entity.Team;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 시퀀스 allocationSize 별 insert 처리량 (rows/s).
+ * allocationSize 1 이 기존 @GeneratedValue(hibernate_sequence) 와 같은 동작이다.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class InsertThroughputBenchmark {
+
+    private static final int ROWS = 10_000;
+    private static final int FLUSH_SIZE = 1_000;
+
+    @Param({"1", "50", "1000"})
+    int allocationSize;
+
+    BenchmarkContext context;
+    EntityManagerFactory emf;
+    Long teamId;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = BenchmarkContext.start("insert" + allocationSize,
+                "--spring.jpa.properties.querydsl.id.allocation_size=" + allocationSize,
+                "--spring.jpa.properties.hibernate.jdbc.batch_size=" + FLUSH_SIZE);
+        emf = context.entityManagerFactory();
+
+        EntityManager em = emf.createEntityManager();
+        em.getTransaction().begin();
+        Team team = new Team("team");
+        em.persist(team);
+        em.getTransaction().commit();
+        em.close();
+        teamId = team.getId();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public void insertMembers() {
+        EntityManager em = emf.createEntityManager();
+        em.getTransaction().begin();
+        for (int i = 0; i < ROWS; i++) {
+            Member member = new Member("member" + i, i % 100);
+            member.setTeam(em.getReference(Team.class, teamId));
+            em.persist(member);
+            if ((i + 1) % FLUSH_SIZE == 0) {
+                em.flush();
+                em.clear();
+            }
+        }
+        em.getTransaction().commit();
+        em.close();
+    }
+}
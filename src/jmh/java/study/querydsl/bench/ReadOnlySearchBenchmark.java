@@ -0,0 +1,115 @@
+package study.querydsl.bench;
+
+import com.querydsl.jpa.impl.JPAQuery;
+import com.querydsl.jpa.impl.JPAQueryFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import study.querydsl.dto.MemberTeamDto;
+import study.querydsl.dto.QMemberTeamDto;
+import study.querydsl.entity.Member;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityTransaction;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static study.querydsl.entity.QMember.member;
+import static study.querydsl.entity.QTeam.team;
+import static study.querydsl.repository.support.ReadOnlyQueries.applyHints;
+
+/**
+ * ReadOnlyQueries 힌트(readOnly + fetch size + flushMode COMMIT) 유무에 따른 검색 비용.
+ * 한 번의 op 는 트랜잭션을 열고 rows 건을 읽고 커밋하는 것이다. (커밋 시 flush 의 dirty checking 까지 포함)
+ * - entities* : findAll_QueryDsl 처럼 엔티티를 읽는 경우. 기본 모드는 행마다 스냅샷을 들고 커밋 때 비교한다
+ * - dto*      : MemberTeamDto 검색. 스냅샷은 없고 fetch size / flush 생략 효과만 남는다
+ * 힙은 gc.alloc.rate.norm(B/op), CPU 는 op/s 의 역수로 비교한다.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class ReadOnlySearchBenchmark {
+
+    private static final int FETCH_SIZE = 500;
+
+    @Param({"10000"})
+    int rows;
+
+    BenchmarkContext context;
+    EntityManager em;
+    JPAQueryFactory queryFactory;
+
+    @Setup(Level.Trial)
+    public void setUp() throws SQLException {
+        context = BenchmarkContext.start("readonly" + rows);
+        context.seed(rows);
+        em = context.entityManagerFactory().createEntityManager();
+        queryFactory = new JPAQueryFactory(em);
+    }
+
+    @TearDown(Level.Invocation)
+    public void clear() {
+        em.clear();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        em.close();
+        context.close();
+    }
+
+    @Benchmark
+    public List<Member> entitiesDefault() {
+        return inTransaction(queryFactory.selectFrom(member));
+    }
+
+    @Benchmark
+    public List<Member> entitiesReadOnly() {
+        return inTransaction(applyHints(queryFactory.selectFrom(member), FETCH_SIZE));
+    }
+
+    @Benchmark
+    public List<MemberTeamDto> dtoDefault() {
+        return inTransaction(dtoQuery());
+    }
+
+    @Benchmark
+    public List<MemberTeamDto> dtoReadOnly() {
+        return inTransaction(applyHints(dtoQuery(), FETCH_SIZE));
+    }
+
+    private JPAQuery<MemberTeamDto> dtoQuery() {
+        return queryFactory
+                .select(new QMemberTeamDto(
+                        member.id.as("memberId"),
+                        member.username,
+                        member.age,
+                        team.id.as("teamId"),
+                        team.name.as("teamName")
+                ))
+                .from(member)
+                .leftJoin(member.team, team);
+    }
+
+    private <T> List<T> inTransaction(JPAQuery<T> query) {
+        EntityTransaction tx = em.getTransaction();
+        tx.begin();
+        try {
+            List<T> result = query.fetch();
+            tx.commit();
+            return result;
+        } finally {
+            if (tx.isActive()) {
+                tx.rollback();
+            }
+        }
+    }
+}
@@ -2,12 +2,18 @@ package study.querydsl;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.core.env.Profiles;
 
 @SpringBootApplication
 public class QuerydslApplication {
 
 	public static void main(String[] args) {
-		SpringApplication.run(QuerydslApplication.class, args);
+		ConfigurableApplicationContext context = SpringApplication.run(QuerydslApplication.class, args);
+		//migrate 는 IdSequenceMigration 을 한 번 실행하고 끝나는 실행이다. 남은 스레드를 기다리지 않고 정상 종료 절차로 닫는다
+		if (context.getEnvironment().acceptsProfiles(Profiles.of("migrate"))) {
+			System.exit(SpringApplication.exit(context));
+		}
 	}
 
 }
@@ -1,20 +1,21 @@
-//package study.querydsl.config;
-//
-//import com.querydsl.jpa.impl.JPAQueryFactory;
-//import org.springframework.context.annotation.Bean;
-//import org.springframework.context.annotation.Configuration;
-//
-//import javax.persistence.EntityManager;
-//import javax.persistence.PersistenceContext;
-//
-//@Configuration
-//public class Config {
-//
-//    @PersistenceContext
-//    EntityManager em;
-//
-//    @Bean
-//    JPAQueryFactory jpaQueryFactory() {
-//        return new JPAQueryFactory(em);
-//    }
-//}
+package study.querydsl.config;
+
+import com.querydsl.jpa.impl.JPAQueryFactory;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+
+@Configuration
+public class Config {
+
+    @PersistenceContext
+    EntityManager em;
+
+    //공유 EntityManager 프록시를 감싸므로 싱글톤으로 모든 리포지토리가 같이 써도 된다
+    @Bean
+    JPAQueryFactory jpaQueryFactory() {
+        return new JPAQueryFactory(em);
+    }
+}
@@ -0,0 +1,83 @@
+package study.querydsl.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+import org.springframework.util.StringUtils;
+
+import javax.sql.DataSource;
+
+/**
+ * querydsl.datasource.replica.url 이 있으면 primary / replica 두 풀을 만들고 읽기 전용 트랜잭션을 replica 로 보낸다.
+ * 없으면 스프링 부트 기본 DataSource 하나만 쓴다.
+ * replica 를 쓰려면 실제 복제 지연을 재는 lag-query 가 있어야 한다. 연결 확인만으로는 뒤처진 replica 를 뺄 수 없으므로 없으면 기동하지 않는다.
+ */
+@Configuration
+@ConditionalOnProperty(prefix = "querydsl.datasource.replica", name = "url")
+@EnableConfigurationProperties(ReplicaDataSourceProperties.class)
+public class DataSourceRoutingConfig {
+
+    @Bean
+    @ConfigurationProperties("spring.datasource.hikari")
+    public HikariDataSource primaryDataSource(DataSourceProperties properties) {
+        return properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+    }
+
+    @Bean
+    public HikariDataSource replicaDataSource(ReplicaDataSourceProperties properties) {
+        HikariDataSource dataSource = new HikariDataSource();
+        dataSource.setPoolName("replica");
+        dataSource.setJdbcUrl(properties.getUrl());
+        dataSource.setUsername(properties.getUsername());
+        dataSource.setPassword(properties.getPassword());
+        if (properties.getDriverClassName() != null) {
+            dataSource.setDriverClassName(properties.getDriverClassName());
+        }
+        dataSource.setMaximumPoolSize(properties.getMaximumPoolSize());
+        dataSource.setReadOnly(true);
+        return dataSource;
+    }
+
+    @Bean
+    public ReplicaLagMonitor replicaLagMonitor(@Qualifier("replicaDataSource") DataSource replicaDataSource,
+                                               ReplicaDataSourceProperties properties) {
+        if (!StringUtils.hasText(properties.getLagQuery())) {
+            throw new IllegalStateException("querydsl.datasource.replica.lag-query is required when a replica url is set"
+                    + " (e.g. heartbeat: true with the lag-query in application-replica.yml)");
+        }
+        return new ReplicaLagMonitor(replicaDataSource, properties);
+    }
+
+    @Bean
+    public ThreadPoolTaskScheduler replicaLagScheduler(ReplicaLagMonitor replicaLagMonitor,
+                                                       @Qualifier("primaryDataSource") DataSource primaryDataSource,
+                                                       ReplicaDataSourceProperties properties) {
+        ThreadPoolTaskScheduler scheduler = new ThreadPoolTaskScheduler();
+        scheduler.setThreadNamePrefix("replica-lag-");
+        scheduler.initialize();
+        if (properties.isHeartbeat()) {
+            ReplicaHeartbeat heartbeat = new ReplicaHeartbeat(primaryDataSource);
+            heartbeat.init();
+            scheduler.scheduleWithFixedDelay(heartbeat::beat, properties.getCheckInterval());
+        }
+        scheduler.scheduleWithFixedDelay(replicaLagMonitor::check, properties.getCheckInterval());
+        return scheduler;
+    }
+
+    @Bean
+    @Primary
+    public DataSource dataSource(@Qualifier("primaryDataSource") DataSource primaryDataSource,
+                                 @Qualifier("replicaDataSource") DataSource replicaDataSource,
+                                 ReplicaLagMonitor replicaLagMonitor) {
+        return new LazyConnectionDataSourceProxy(
+                new ReadWriteRoutingDataSource(primaryDataSource, replicaDataSource, replicaLagMonitor));
+    }
+}
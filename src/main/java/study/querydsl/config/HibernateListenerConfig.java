@@ -0,0 +1,61 @@
+package study.querydsl.config;
+
+import lombok.RequiredArgsConstructor;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.event.service.spi.EventListenerRegistry;
+import org.hibernate.event.spi.EventType;
+import org.springframework.context.annotation.Configuration;
+import study.querydsl.monitoring.EntityLoadMetricsListener;
+import study.querydsl.repository.support.ChangeLogEventListener;
+import study.querydsl.repository.support.MemberSearchResultCache;
+import study.querydsl.repository.support.SearchResultCacheEventListener;
+import study.querydsl.repository.support.TeamStatsEventListener;
+import study.querydsl.repository.support.UsernameIndexEventListener;
+import study.querydsl.repository.support.UsernameLookupIndex;
+import study.querydsl.repository.support.UsernameTrigramIndex;
+
+import javax.annotation.PostConstruct;
+import javax.persistence.EntityManagerFactory;
+
+/**
+ * 하이버네이트 이벤트 리스너 등록
+ */
+@Configuration
+@RequiredArgsConstructor
+public class HibernateListenerConfig {
+
+    private final EntityManagerFactory emf;
+    private final UsernameTrigramIndex usernameTrigramIndex;
+    private final UsernameLookupIndex usernameLookupIndex;
+    private final MemberSearchResultCache memberSearchResultCache;
+
+    @PostConstruct
+    public void registerListeners() {
+        EventListenerRegistry registry = emf.unwrap(SessionFactoryImplementor.class)
+                .getServiceRegistry()
+                .getService(EventListenerRegistry.class);
+
+        registry.appendListeners(EventType.POST_LOAD, new EntityLoadMetricsListener());
+
+        UsernameIndexEventListener usernameIndexListener =
+                new UsernameIndexEventListener(usernameTrigramIndex, usernameLookupIndex);
+        registry.appendListeners(EventType.POST_INSERT, usernameIndexListener);
+        registry.appendListeners(EventType.POST_UPDATE, usernameIndexListener);
+        registry.appendListeners(EventType.POST_DELETE, usernameIndexListener);
+
+        TeamStatsEventListener teamStatsListener = new TeamStatsEventListener();
+        registry.appendListeners(EventType.POST_INSERT, teamStatsListener);
+        registry.appendListeners(EventType.POST_UPDATE, teamStatsListener);
+        registry.appendListeners(EventType.POST_DELETE, teamStatsListener);
+
+        SearchResultCacheEventListener resultCacheListener = new SearchResultCacheEventListener(memberSearchResultCache);
+        registry.appendListeners(EventType.POST_INSERT, resultCacheListener);
+        registry.appendListeners(EventType.POST_UPDATE, resultCacheListener);
+        registry.appendListeners(EventType.POST_DELETE, resultCacheListener);
+
+        ChangeLogEventListener changeLogListener = new ChangeLogEventListener();
+        registry.appendListeners(EventType.POST_INSERT, changeLogListener);
+        registry.appendListeners(EventType.POST_UPDATE, changeLogListener);
+        registry.appendListeners(EventType.POST_DELETE, changeLogListener);
+    }
+}
@@ -0,0 +1,54 @@
+package study.querydsl.config;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.context.annotation.Profile;
+import org.springframework.core.env.Environment;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import study.querydsl.entity.support.PooledSequenceGenerator;
+
+/**
+ * 공유 hibernate_sequence(allocationSize 1) 를 쓰던 기존 DB 를 엔티티별 pooled-lo 시퀀스로 옮긴다.
+ * pooled-lo 는 시퀀스 값을 블록의 시작 id 로 쓰므로, 각 시퀀스를 테이블의 max(id) + 1 부터 다시 시작시킨다.
+ *
+ * 애플리케이션을 내린 상태에서 한 번만 실행한다. 끝나면 QuerydslApplication 이 컨텍스트를 닫고 종료 코드를 돌려준다.
+ * (스케줄링 / team_stats 보정 작업은 migrate 프로파일에서 등록되지 않는다 - SchedulingConfig)
+ * ./gradlew bootRun --args='--spring.profiles.active=migrate'
+ */
+@Slf4j
+@Component
+@Profile("migrate")
+@RequiredArgsConstructor
+public class IdSequenceMigration implements ApplicationRunner {
+
+    private static final String[][] SEQUENCES = {
+            //시퀀스, 테이블, id 컬럼
+            {"member_seq", "member", "member_id"},
+            {"team_seq", "team", "id"},
+            {"hello_seq", "hello", "id"},
+    };
+
+    private final JdbcTemplate jdbcTemplate;
+    private final Environment environment;
+
+    @Override
+    public void run(ApplicationArguments args) {
+        int allocationSize = environment.getProperty("spring.jpa.properties." + PooledSequenceGenerator.ALLOCATION_SIZE,
+                Integer.class, PooledSequenceGenerator.DEFAULT_ALLOCATION_SIZE);
+
+        for (String[] sequence : SEQUENCES) {
+            String name = sequence[0];
+            Long next = jdbcTemplate.queryForObject(
+                    "select coalesce(max(" + sequence[2] + "), 0) + 1 from " + sequence[1], Long.class);
+
+            jdbcTemplate.execute("create sequence if not exists " + name
+                    + " start with " + next + " increment by " + allocationSize);
+            jdbcTemplate.execute("alter sequence " + name
+                    + " restart with " + next + " increment by " + allocationSize);
+            log.info("sequence {} restarts at {} (increment {})", name, next, allocationSize);
+        }
+    }
+}
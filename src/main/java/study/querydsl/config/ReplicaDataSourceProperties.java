@@ -0,0 +1,24 @@
+package study.querydsl.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+@Getter
+@Setter
+@ConfigurationProperties(prefix = "querydsl.datasource.replica")
+public class ReplicaDataSourceProperties {
+
+    private String url;
+    private String username;
+    private String password;
+    private String driverClassName;
+    private int maximumPoolSize = 10;
+
+    private Duration maxLag = Duration.ofSeconds(5);    //이보다 뒤처지면 읽기도 primary 로 보낸다
+    private String lagQuery;                            //replica 에서 실행해 지연(초)을 돌려주는 쿼리. 필수 (없으면 기동 실패)
+    private boolean heartbeat;                          //true 면 primary 의 replica_heartbeat 를 check-interval 마다 갱신 (ReplicaHeartbeat)
+    private Duration checkInterval = Duration.ofSeconds(5);
+}
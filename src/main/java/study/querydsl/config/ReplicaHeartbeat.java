@@ -0,0 +1,36 @@
+package study.querydsl.config;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import javax.sql.DataSource;
+
+/**
+ * primary 의 replica_heartbeat 행을 주기적으로 현재 시각으로 갱신한다. (pt-heartbeat 방식)
+ * 복제로 넘어간 값과 replica 의 현재 시각 차이가 곧 복제 지연이므로, lag-query 는 replica 에서 이 행을 읽는다.
+ */
+@Slf4j
+public class ReplicaHeartbeat {
+
+    private final JdbcTemplate primary;
+
+    public ReplicaHeartbeat(DataSource primary) {
+        this.primary = new JdbcTemplate(primary);
+    }
+
+    public void init() {
+        primary.execute("create table if not exists replica_heartbeat (id int primary key, beat_at timestamp)");
+        beat();
+    }
+
+    public void beat() {
+        try {
+            if (primary.update("update replica_heartbeat set beat_at = current_timestamp where id = 1") == 0) {
+                primary.update("insert into replica_heartbeat (id, beat_at) values (1, current_timestamp)");
+            }
+        } catch (RuntimeException e) {
+            //heartbeat 가 멈추면 지연이 커지므로 읽기는 primary 로 간다
+            log.warn("replica heartbeat failed", e);
+        }
+    }
+}
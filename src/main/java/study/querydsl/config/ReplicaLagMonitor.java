@@ -0,0 +1,49 @@
+package study.querydsl.config;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import javax.sql.DataSource;
+import java.util.function.BooleanSupplier;
+
+/**
+ * 주기적으로 replica 에 lagQuery 를 실행해서 읽기를 보내도 되는지 판단한다.
+ * 쿼리가 실패하거나 지연이 maxLag 를 넘으면 replica 를 빼고, 돌아오면 다시 넣는다.
+ */
+@Slf4j
+public class ReplicaLagMonitor implements BooleanSupplier {
+
+    private final JdbcTemplate replica;
+    private final ReplicaDataSourceProperties properties;
+    private volatile boolean available = true;
+
+    public ReplicaLagMonitor(DataSource replica, ReplicaDataSourceProperties properties) {
+        this.replica = new JdbcTemplate(replica);
+        this.properties = properties;
+    }
+
+    public void check() {
+        boolean nowAvailable;
+        try {
+            Number lagSeconds = replica.queryForObject(properties.getLagQuery(), Number.class);
+            nowAvailable = lagSeconds != null && lagSeconds.doubleValue() * 1000 <= properties.getMaxLag().toMillis();
+            if (!nowAvailable && available) {
+                log.warn("replica lag {}s exceeds {}, routing reads to primary", lagSeconds, properties.getMaxLag());
+            }
+        } catch (RuntimeException e) {
+            nowAvailable = false;
+            if (available) {
+                log.warn("replica check failed, routing reads to primary", e);
+            }
+        }
+        if (nowAvailable && !available) {
+            log.info("replica is back, routing reads to replica");
+        }
+        available = nowAvailable;
+    }
+
+    @Override
+    public boolean getAsBoolean() {
+        return available;
+    }
+}
@@ -0,0 +1,15 @@
+package study.querydsl.config;
+
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+import org.springframework.scheduling.annotation.EnableScheduling;
+
+/**
+ * 주기 작업(TeamStatsRepairJob, ChangeLogPurgeJob)
+ * 일회성으로 실행하고 끝나야 하는 migrate 프로파일에서는 스케줄러 스레드를 띄우지 않는다.
+ */
+@Configuration
+@EnableScheduling
+@Profile("!migrate")
+public class SchedulingConfig {
+}
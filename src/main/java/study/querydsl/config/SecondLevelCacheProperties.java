@@ -0,0 +1,27 @@
+package study.querydsl.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+@Getter
+@Setter
+@Component
+@ConfigurationProperties(prefix = "querydsl.cache")
+public class SecondLevelCacheProperties {
+
+    //리전 이름 -> 설정
+    private Map<String, Region> regions = new LinkedHashMap<>();
+
+    @Getter
+    @Setter
+    public static class Region {
+        private Long maximumSize;           //null 이면 크기 제한 없음
+        private Duration timeToLive;        //null 이면 만료 없음
+    }
+}
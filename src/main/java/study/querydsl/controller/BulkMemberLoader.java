@@ -0,0 +1,124 @@
+package study.querydsl.controller;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import study.querydsl.entity.Member;
+import study.querydsl.entity.Team;
+import study.querydsl.repository.support.ChangeLogEventListener;
+import study.querydsl.repository.support.ChangeLogWriter;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 부하 테스트용 대량 데이터 적재.
+ * - 시퀀스 pooled-lo 옵티마이저로 insert 마다 id 조회 왕복을 없앤다
+ * - hibernate.jdbc.batch_size / order_inserts 로 insert 를 배치로 묶는다
+ * - batchSize 마다 flush/clear, chunkSize 마다 커밋해서 힙과 undo 로그를 일정하게 유지한다
+ * - 회원마다 change_log 를 한 행씩 더 쓰지 않도록 변경 기록을 끄고, 끝나면(실패해도) 리셋 표시를 남긴다
+ *   (피드를 따라가던 쪽은 410 을 받고 전체를 다시 받는다)
+ */
+@Slf4j
+@Component
+@Profile("local")
+@RequiredArgsConstructor
+public class BulkMemberLoader {
+
+    private final MemberLoaderProperties properties;
+    private final PlatformTransactionManager transactionManager;
+
+    @PersistenceContext
+    private EntityManager em;
+
+    public void load() {
+        TransactionTemplate tx = new TransactionTemplate(transactionManager);
+        long start = System.nanoTime();
+
+        List<Long> teamIds = tx.execute(status -> insertTeams());
+        double[] cumulative = teamWeights(teamIds.size(), properties.getSkew());
+
+        int total = properties.getMembers();
+        int loaded = 0;
+        try {
+            while (loaded < total) {
+                int from = loaded;
+                int to = Math.min(total, from + properties.getChunkSize());
+                tx.executeWithoutResult(status -> insertMembers(from, to, teamIds, cumulative, start));
+                loaded = to;
+            }
+        } finally {
+            tx.executeWithoutResult(status -> ChangeLogWriter.writeReset(em));
+        }
+
+        log.info("loaded {} members into {} teams in {} ms", total, teamIds.size(), elapsedMillis(start));
+    }
+
+    private List<Long> insertTeams() {
+        List<Long> teamIds = new ArrayList<>();
+        for (int i = 0; i < properties.getTeams(); i++) {
+            Team team = new Team("team" + i);
+            em.persist(team);
+            teamIds.add(team.getId());
+        }
+        em.flush();
+        em.clear();
+        return teamIds;
+    }
+
+    private void insertMembers(int from, int to, List<Long> teamIds, double[] cumulative, long start) {
+        em.setProperty(ChangeLogEventListener.SKIP, true);
+        for (int i = from; i < to; i++) {
+            //getReference 는 select 없이 프록시만 만든다. team.getMembers() 를 건드리지 않도록 setTeam 으로 연관관계만 건다
+            Team team = em.getReference(Team.class, teamIds.get(pickTeam(cumulative)));
+            Member member = new Member("member" + i, i % 100);
+            member.setTeam(team);
+            em.persist(member);
+
+            int count = i + 1;
+            if (count % properties.getBatchSize() == 0) {
+                em.flush();
+                em.clear();
+            }
+            if (count % properties.getProgressInterval() == 0) {
+                long millis = Math.max(1, elapsedMillis(start));
+                log.info("loaded {}/{} members ({} rows/s)", count, properties.getMembers(), count * 1000L / millis);
+            }
+        }
+        em.flush();
+        em.clear();
+    }
+
+    /**
+     * zipf 분포 누적 가중치. skew 가 0 이면 균등 분포가 된다.
+     */
+    static double[] teamWeights(int teams, double skew) {
+        double[] cumulative = new double[teams];
+        double sum = 0;
+        for (int i = 0; i < teams; i++) {
+            sum += 1.0 / Math.pow(i + 1, skew);
+            cumulative[i] = sum;
+        }
+        for (int i = 0; i < teams; i++) {
+            cumulative[i] /= sum;
+        }
+        return cumulative;
+    }
+
+    private static int pickTeam(double[] cumulative) {
+        int index = Arrays.binarySearch(cumulative, ThreadLocalRandom.current().nextDouble());
+        int team = index >= 0 ? index : -index - 1;
+        return Math.min(team, cumulative.length - 1);
+    }
+
+    private static long elapsedMillis(long start) {
+        return (System.nanoTime() - start) / 1_000_000;
+    }
+}
@@ -0,0 +1,35 @@
+package study.querydsl.controller;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import study.querydsl.repository.ChangeLogRepository;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+
+/**
+ * 보관 기간이 지난 change_log 를 지운다.
+ */
+@Slf4j
+@Component
+@Profile("!migrate")
+public class ChangeLogPurgeJob {
+
+    private final ChangeLogRepository changeLogRepository;
+    private final Duration retention;
+
+    public ChangeLogPurgeJob(ChangeLogRepository changeLogRepository,
+                             @Value("${querydsl.change-feed.retention:7d}") Duration retention) {
+        this.changeLogRepository = changeLogRepository;
+        this.retention = retention;
+    }
+
+    @Scheduled(cron = "${querydsl.change-feed.purge-cron:-}")
+    public void purge() {
+        long deleted = changeLogRepository.deleteOlderThan(LocalDateTime.now().minus(retention));
+        log.info("change_log purged: {} rows older than {}", deleted, retention);
+    }
+}
@@ -17,9 +17,15 @@ import javax.persistence.PersistenceContext;
 public class InitMember {
 
     private final InitMemberService initMemberService;
+    private final BulkMemberLoader bulkMemberLoader;
+    private final MemberLoaderProperties loaderProperties;
 
     @PostConstruct
     public void init() {
+        if (loaderProperties.isEnabled()) {
+            bulkMemberLoader.load();
+            return;
+        }
         initMemberService.init();
     }
 
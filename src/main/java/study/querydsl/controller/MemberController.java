@@ -1,36 +1,154 @@
 package study.querydsl.controller;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
 import lombok.RequiredArgsConstructor;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.http.HttpStatus;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+import study.querydsl.dto.ChangeDto;
+import study.querydsl.dto.CursorSlice;
 import study.querydsl.dto.MemberSearchCondition;
 import study.querydsl.dto.MemberTeamDto;
+import study.querydsl.repository.ChangeLogRepository;
 import study.querydsl.repository.MemberJpaRepository;
 import study.querydsl.repository.MemberRepository;
+import study.querydsl.repository.support.ChangeFeedResetException;
+import study.querydsl.repository.support.ChangeToken;
+import study.querydsl.repository.support.KeysetCursor;
+import study.querydsl.repository.support.SearchCoalescer;
+import study.querydsl.repository.support.SearchKey;
 
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.List;
 
 @RequiredArgsConstructor
 @RestController
 public class MemberController {
 
+    private static final int MAX_SLICE_SIZE = 2000;
+    private static final int STREAM_FLUSH_ROWS = 500;
+    private static final int MAX_CHANGE_BATCH = 1000;
+    private static final int MAX_BATCH_IDS = 5000;
+    private static final byte NEW_LINE = '\n';
+
     private final MemberJpaRepository memberJpaRepository;
     private final MemberRepository memberRepository;
+    private final ObjectMapper objectMapper;
+    private final SearchCoalescer searchCoalescer;
+    private final ChangeLogRepository changeLogRepository;
 
+    //동시에 들어온 같은 검색은 한 번만 실행한다 (트랜잭션 밖에서 합쳐야 기다리는 요청이 커넥션을 잡지 않는다)
     @GetMapping("/v1/members")
     public List<MemberTeamDto> searchMemberV1(MemberSearchCondition condition) {
-        return memberJpaRepository.search(condition);
+        return searchCoalescer.execute(SearchKey.list(condition), () -> memberJpaRepository.search(condition));
     }
 
     @GetMapping("/v2/members")
     public Page<MemberTeamDto> searchMemberV2(MemberSearchCondition condition, Pageable pageable) {
-        return memberRepository.searchPageSimple(condition, pageable);
+        return searchCoalescer.execute(SearchKey.page(condition, pageable),
+                () -> memberRepository.searchPageSimple(condition, pageable));
     }
 
     @GetMapping("/v3/members")
     public Page<MemberTeamDto> searchMemberV3(MemberSearchCondition condition, Pageable pageable) {
-        return memberRepository.searchPageComplex(condition, pageable);
+        return searchCoalescer.execute(SearchKey.page(condition, pageable),
+                () -> memberRepository.searchPageComplex(condition, pageable));
+    }
+
+    @GetMapping("/v4/members")
+    public CursorSlice<MemberTeamDto> searchMemberV4(MemberSearchCondition condition,
+                                                     @RequestParam(required = false) String after,
+                                                     @RequestParam(defaultValue = "20") int size) {
+        int sliceSize = Math.max(1, Math.min(size, MAX_SLICE_SIZE));
+        checkCursor(after);
+        return memberRepository.searchSlice(condition, after, sliceSize);
+    }
+
+    //리포지토리 안에서 나면 예외 변환(InvalidDataAccessApiUsageException)을 거쳐 500 이 되므로 먼저 확인한다
+    private static void checkCursor(String after) {
+        try {
+            KeysetCursor.decode(after);
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage(), e);
+        }
+    }
+
+    /**
+     * id 목록으로 회원을 한 번에 조회한다. 요청한 순서대로 돌려주고, 없는 id 는 빠진다.
+     */
+    @PostMapping("/members/batch")
+    public List<MemberTeamDto> findMembers(@RequestBody List<Long> ids) {
+        if (ids.size() > MAX_BATCH_IDS) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                    "too many ids: " + ids.size() + " (max " + MAX_BATCH_IDS + ")");
+        }
+        return memberJpaRepository.findMemberTeamsByIds(ids);
+    }
+
+    /**
+     * 회원 전체 내보내기. 한 줄에 MemberTeamDto 하나씩 NDJSON 으로 바로 써 내려간다.
+     */
+    @GetMapping("/members/stream")
+    public void streamMembers(MemberSearchCondition condition, HttpServletResponse response) throws IOException {
+        response.setContentType("application/x-ndjson");
+        response.setCharacterEncoding("UTF-8");
+
+        ObjectWriter writer = objectMapper.writerFor(MemberTeamDto.class);
+        ServletOutputStream out = response.getOutputStream();
+        long[] written = {0};
+
+        try {
+            memberJpaRepository.streamSearch(condition, dto -> {
+                try {
+                    out.write(writer.writeValueAsBytes(dto));
+                    out.write(NEW_LINE);
+                    if (++written[0] % STREAM_FLUSH_ROWS == 0) {
+                        out.flush();
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        out.flush();
+    }
+
+    /**
+     * 변경 피드. since 토큰 이후 insert / update / delete 된 회원·팀을 limit 건씩 돌려준다.
+     * 응답의 nextCursor 를 다음 요청의 since 로 넘긴다. (hasNext 가 false 여도 다음 동기화는 nextCursor 부터)
+     * 410 이면 그 사이 기록 없이 바뀐 데이터가 있으므로 head 토큰을 받고 전체를 다시 받는다.
+     */
+    @GetMapping("/members/changes")
+    public CursorSlice<ChangeDto> memberChanges(@RequestParam(required = false) String since,
+                                                @RequestParam(defaultValue = "100") int limit) {
+        try {
+            ChangeToken.decode(since);
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage(), e);
+        }
+        try {
+            return changeLogRepository.findChanges(since, Math.max(1, Math.min(limit, MAX_CHANGE_BATCH)));
+        } catch (ChangeFeedResetException e) {
+            //이어서 읽을 수 없다. 클라이언트는 /members/changes/head 부터 전체를 다시 받는다
+            throw new ResponseStatusException(HttpStatus.GONE, e.getMessage(), e);
+        }
+    }
+
+    //전체 동기화 전에 받아 두는 시작 토큰
+    @GetMapping("/members/changes/head")
+    public String memberChangesHead() {
+        return changeLogRepository.currentToken();
     }
 }
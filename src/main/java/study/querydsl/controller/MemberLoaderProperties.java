@@ -0,0 +1,21 @@
+package study.querydsl.controller;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Getter
+@Setter
+@Component
+@ConfigurationProperties(prefix = "loader")
+public class MemberLoaderProperties {
+
+    private boolean enabled = false;
+    private int members = 100_000;
+    private int teams = 10;
+    private double skew = 0.0;              //0이면 팀에 고르게, 클수록 앞 팀에 몰린다 (zipf 지수)
+    private int batchSize = 1_000;          //flush/clear 단위. hibernate.jdbc.batch_size 와 맞춘다
+    private int chunkSize = 50_000;         //커밋 단위
+    private int progressInterval = 100_000;
+}
@@ -0,0 +1,31 @@
+package study.querydsl.controller;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import study.querydsl.dto.TeamMembersDto;
+import study.querydsl.dto.TeamStatsDto;
+import study.querydsl.repository.TeamRepository;
+
+@RequiredArgsConstructor
+@RestController
+public class TeamController {
+
+    private static final int MAX_MEMBER_LIMIT = 1000;
+
+    private final TeamRepository teamRepository;
+
+    @GetMapping("/teams")
+    public Page<TeamMembersDto> teams(Pageable pageable, @RequestParam(defaultValue = "100") int memberLimit) {
+        return teamRepository.findTeamsWithMembers(pageable, Math.max(0, Math.min(memberLimit, MAX_MEMBER_LIMIT)));
+    }
+
+    //팀별 나이 집계 (team_stats 읽기 모델)
+    @GetMapping("/teams/stats")
+    public Page<TeamStatsDto> teamStats(Pageable pageable) {
+        return teamRepository.findTeamStats(pageable);
+    }
+}
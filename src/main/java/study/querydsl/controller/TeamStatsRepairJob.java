@@ -0,0 +1,51 @@
+package study.querydsl.controller;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.annotation.Profile;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import study.querydsl.repository.support.TeamStatsWriter;
+
+import javax.persistence.EntityManager;
+
+/**
+ * team_stats 전체 재구성 / 보정 작업.
+ * - 기동 시 team_stats 가 비어 있는데 회원이 있으면 한 번 만든다. (기존 데이터에 처음 붙일 때)
+ * - querydsl.team-stats.repair-cron 을 지정하면 주기적으로 다시 만든다. (기본은 꺼짐)
+ * 증분 갱신이 놓치는 변경(벌크 JPQL, 직접 실행한 SQL)을 맞추는 용도다.
+ * migrate 프로파일(ddl-auto none)에서는 team_stats 가 아직 없을 수 있으므로 등록하지 않는다.
+ */
+@Slf4j
+@Component
+@Profile("!migrate")
+public class TeamStatsRepairJob {
+
+    private final EntityManager em;
+    private final TransactionTemplate transactionTemplate;
+
+    public TeamStatsRepairJob(EntityManager em, PlatformTransactionManager transactionManager) {
+        this.em = em;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void buildIfEmpty() {
+        Boolean empty = transactionTemplate.execute(status ->
+                ((Number) em.createNativeQuery("select count(*) from team_stats").getSingleResult()).longValue() == 0
+                        && ((Number) em.createNativeQuery("select count(*) from member").getSingleResult()).longValue() > 0);
+        if (Boolean.TRUE.equals(empty)) {
+            rebuild();
+        }
+    }
+
+    @Scheduled(cron = "${querydsl.team-stats.repair-cron:-}")
+    public void rebuild() {
+        long start = System.currentTimeMillis();
+        Integer teams = transactionTemplate.execute(status -> TeamStatsWriter.rebuildAll(em));
+        log.info("team_stats rebuilt: {} teams, {} ms", teams, System.currentTimeMillis() - start);
+    }
+}
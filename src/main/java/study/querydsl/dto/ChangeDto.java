@@ -0,0 +1,22 @@
+package study.querydsl.dto;
+
+import lombok.Data;
+
+import java.time.LocalDateTime;
+
+@Data
+public class ChangeDto {
+    private String entityType;          //MEMBER, TEAM
+    private Long entityId;
+    private String operation;           //INSERT, UPDATE, DELETE (배치 안에서 같은 엔티티는 마지막 변경만)
+    private LocalDateTime changedAt;
+    private MemberTeamDto member;       //MEMBER 의 현재 값, 삭제되었으면 null
+    private String teamName;            //TEAM 의 현재 이름, 삭제되었으면 null
+
+    public ChangeDto(String entityType, Long entityId, String operation, LocalDateTime changedAt) {
+        this.entityType = entityType;
+        this.entityId = entityId;
+        this.operation = operation;
+        this.changedAt = changedAt;
+    }
+}
@@ -7,6 +7,8 @@ public class MemberSearchCondition {
     //회원명, 팀명, 나이(ageGoe, ageLoe)
 
     private String username;
+    private String usernamePrefix;      //회원명 앞부분 일치 (idx_member_username 범위 검색)
+    private String usernameContains;    //회원명 부분 일치 (UsernameTrigramIndex)
     private String teamName;
     private Integer ageGoe;
     private Integer ageLoe;
@@ -0,0 +1,27 @@
+package study.querydsl.dto;
+
+import com.querydsl.core.annotations.QueryProjection;
+import lombok.Data;
+
+@Data
+public class TeamStatsDto {
+    private Long teamId;
+    private String teamName;
+    private long memberCount;
+    private long ageSum;
+    private Integer ageMin;     //회원이 없으면 null
+    private Integer ageMax;
+    private Double ageAvg;
+
+    //집계 행이 아직 없는 팀(회원 없음)은 left join 이라 null 로 들어온다
+    @QueryProjection
+    public TeamStatsDto(Long teamId, String teamName, Long memberCount, Long ageSum, Integer ageMin, Integer ageMax) {
+        this.teamId = teamId;
+        this.teamName = teamName;
+        this.memberCount = memberCount != null ? memberCount : 0;
+        this.ageSum = ageSum != null ? ageSum : 0;
+        this.ageMin = ageMin;
+        this.ageMax = ageMax;
+        this.ageAvg = this.memberCount > 0 ? (double) this.ageSum / this.memberCount : null;
+    }
+}
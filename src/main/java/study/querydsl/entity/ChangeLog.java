@@ -0,0 +1,58 @@
+package study.querydsl.entity;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.ToString;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.EnumType;
+import javax.persistence.Enumerated;
+import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
+import javax.persistence.Id;
+import javax.persistence.Index;
+import javax.persistence.SequenceGenerator;
+import javax.persistence.Table;
+import java.time.LocalDateTime;
+
+/**
+ * Member / Team 변경 기록. 변경 피드(/members/changes)가 id 순서로 읽는다.
+ * 행은 ChangeLogEventListener 가 커밋 직전에 네이티브 insert 로만 쓴다.
+ * id 는 커밋 직전에 시퀀스에서 바로 받아야 커밋 순서와 거의 같아지므로 pooled 최적화 없이 하나씩 받는다.
+ * RESET 은 엔티티 변경이 아니라, 기록 없이 데이터를 바꾼 작업(대량 적재)이 끝났다는 표시다. (entity_id 0)
+ */
+@Entity
+@Getter
+@NoArgsConstructor(access = AccessLevel.PROTECTED)
+@ToString
+@Table(indexes = @Index(name = "idx_change_log_changed_at", columnList = "changed_at"))
+@SequenceGenerator(name = "change_log_seq_generator", sequenceName = "change_log_seq", allocationSize = 1)
+public class ChangeLog {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "change_log_seq_generator")
+    private Long id;
+
+    @Enumerated(EnumType.STRING)
+    @Column(length = 16)
+    private EntityType entityType;
+
+    private Long entityId;
+
+    @Enumerated(EnumType.STRING)
+    @Column(length = 16)
+    private Operation operation;
+
+    @Column(name = "changed_at")
+    private LocalDateTime changedAt;
+
+    public enum EntityType {
+        MEMBER, TEAM
+    }
+
+    public enum Operation {
+        INSERT, UPDATE, DELETE, RESET
+    }
+}
@@ -2,6 +2,9 @@ package study.querydsl.entity;
 
 import lombok.Getter;
 import lombok.Setter;
+import org.hibernate.annotations.GenericGenerator;
+import org.hibernate.annotations.Parameter;
+import study.querydsl.entity.support.PooledSequenceGenerator;
 
 import javax.persistence.Entity;
 import javax.persistence.GeneratedValue;
@@ -10,8 +13,10 @@ import javax.persistence.Id;
 @Entity
 @Getter
 @Setter
+@GenericGenerator(name = "hello_seq_generator", strategy = PooledSequenceGenerator.STRATEGY,
+        parameters = @Parameter(name = "sequence_name", value = "hello_seq"))
 public class Hello {
 
-    @Id @GeneratedValue
+    @Id @GeneratedValue(generator = "hello_seq_generator")
     private Long id;
 }
@@ -1,6 +1,10 @@
 package study.querydsl.entity;
 
 import lombok.*;
+import org.hibernate.annotations.GenericGenerator;
+import org.hibernate.annotations.Parameter;
+import study.querydsl.entity.support.PooledSequenceGenerator;
+
 import javax.persistence.*;
 
 @Entity
@@ -8,10 +12,17 @@ import javax.persistence.*;
 @Setter
 @NoArgsConstructor(access = AccessLevel.PROTECTED)
 @ToString(of = {"id", "username", "age"})
+@Table(indexes = {
+        @Index(name = "idx_member_username", columnList = "username"),
+        @Index(name = "idx_member_team_age", columnList = "team_id, age, username"),   //팀+나이 검색을 커버
+        @Index(name = "idx_member_age", columnList = "age")
+})
+@GenericGenerator(name = "member_seq_generator", strategy = PooledSequenceGenerator.STRATEGY,
+        parameters = @Parameter(name = "sequence_name", value = "member_seq"))
 public class Member {
 
     @Id
-    @GeneratedValue
+    @GeneratedValue(generator = "member_seq_generator")
     @Column(name = "member_id")
     private Long id;
 
@@ -1,11 +1,19 @@
 package study.querydsl.entity;
 
 import lombok.*;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+import org.hibernate.annotations.GenericGenerator;
+import org.hibernate.annotations.Parameter;
+import study.querydsl.entity.support.PooledSequenceGenerator;
 
+import javax.persistence.Cacheable;
 import javax.persistence.Entity;
 import javax.persistence.GeneratedValue;
 import javax.persistence.Id;
+import javax.persistence.Index;
 import javax.persistence.OneToMany;
+import javax.persistence.Table;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -14,13 +22,19 @@ import java.util.List;
 @Setter
 @NoArgsConstructor(access = AccessLevel.PROTECTED)
 @ToString(of = {"id", "name"})
+@Table(indexes = @Index(name = "idx_team_name", columnList = "name"))
+@GenericGenerator(name = "team_seq_generator", strategy = PooledSequenceGenerator.STRATEGY,
+        parameters = @Parameter(name = "sequence_name", value = "team_seq"))
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
 public class Team {
     @Id
-    @GeneratedValue
+    @GeneratedValue(generator = "team_seq_generator")
     private Long id;
 
     private String name;
 
+    //컬렉션은 캐시하지 않는다. Member 가 2차 캐시 대상이 아니라 캐시된 id 목록을 꺼내면 회원마다 다시 조회(N+1)하게 된다
     @OneToMany(mappedBy = "team")
     List<Member> members = new ArrayList<>();
 
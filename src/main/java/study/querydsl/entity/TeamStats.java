@@ -0,0 +1,31 @@
+package study.querydsl.entity;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.ToString;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+
+/**
+ * 팀별 회원 나이 집계 읽기 모델. (count, sum, min, max)
+ * Member 가 바뀔 때 TeamStatsEventListener 가 같은 트랜잭션 안에서 증분으로 갱신한다.
+ * 쓰기는 TeamStatsWriter 의 네이티브 SQL 로만 하므로 setter 가 없다.
+ */
+@Entity
+@Getter
+@NoArgsConstructor(access = AccessLevel.PROTECTED)
+@ToString
+public class TeamStats {
+
+    @Id
+    @Column(name = "team_id")
+    private Long teamId;
+
+    private long memberCount;
+    private long ageSum;
+    private Integer ageMin;
+    private Integer ageMax;
+}
@@ -0,0 +1,15 @@
+package study.querydsl.monitoring;
+
+import org.hibernate.event.spi.PostLoadEvent;
+import org.hibernate.event.spi.PostLoadEventListener;
+
+/**
+ * 엔티티가 하나 로딩될 때마다 현재 스코프에 센다. (DTO 조회는 엔티티를 로딩하지 않는다)
+ */
+public class EntityLoadMetricsListener implements PostLoadEventListener {
+
+    @Override
+    public void onPostLoad(PostLoadEvent event) {
+        QueryMetricsScope.recordEntityLoaded();
+    }
+}
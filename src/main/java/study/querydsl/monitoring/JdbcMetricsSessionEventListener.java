@@ -0,0 +1,33 @@
+package study.querydsl.monitoring;
+
+import org.hibernate.BaseSessionEventListener;
+
+/**
+ * 세션마다 하나씩 만들어지며 JDBC 실행 시간을 현재 스코프에 더한다.
+ * hibernate.session.events.auto 로 등록한다.
+ */
+public class JdbcMetricsSessionEventListener extends BaseSessionEventListener {
+
+    private long statementStart;
+    private long batchStart;
+
+    @Override
+    public void jdbcExecuteStatementStart() {
+        statementStart = System.nanoTime();
+    }
+
+    @Override
+    public void jdbcExecuteStatementEnd() {
+        QueryMetricsScope.recordJdbcTime(System.nanoTime() - statementStart);
+    }
+
+    @Override
+    public void jdbcExecuteBatchStart() {
+        batchStart = System.nanoTime();
+    }
+
+    @Override
+    public void jdbcExecuteBatchEnd() {
+        QueryMetricsScope.recordJdbcTime(System.nanoTime() - batchStart);
+    }
+}
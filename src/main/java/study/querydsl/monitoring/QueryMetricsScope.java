@@ -0,0 +1,69 @@
+package study.querydsl.monitoring;
+
+import lombok.Getter;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * 리포지토리 메서드 한 번 실행 동안 나간 SQL 수 / JDBC 시간 / 로딩한 엔티티 수를 모은다.
+ * 하이버네이트 훅(StatementInspector, SessionEventListener, PostLoadEventListener)은 같은 스레드에서 불리므로
+ * 스레드 로컬에 열린 스코프 전부에 누적한다. (바깥 메서드는 안쪽 메서드 비용을 포함한다)
+ */
+@Getter
+public class QueryMetricsScope {
+
+    private static final ThreadLocal<Deque<QueryMetricsScope>> SCOPES = ThreadLocal.withInitial(ArrayDeque::new);
+
+    private final String method;
+    private final String shape;
+    private long statements;
+    private long jdbcNanos;
+    private long entitiesLoaded;
+    private String lastSql;
+
+    private QueryMetricsScope(String method, String shape) {
+        this.method = method;
+        this.shape = shape;
+    }
+
+    public static QueryMetricsScope open(String method, String shape) {
+        QueryMetricsScope scope = new QueryMetricsScope(method, shape);
+        SCOPES.get().push(scope);
+        return scope;
+    }
+
+    public void close() {
+        Deque<QueryMetricsScope> scopes = SCOPES.get();
+        scopes.remove(this);
+        if (scopes.isEmpty()) {
+            SCOPES.remove();
+        }
+    }
+
+    /**
+     * 가장 안쪽(현재 실행 중인) 스코프. 열린 스코프가 없으면 null
+     */
+    public static QueryMetricsScope current() {
+        return SCOPES.get().peek();
+    }
+
+    static void recordStatement(String sql) {
+        for (QueryMetricsScope scope : SCOPES.get()) {
+            scope.statements++;
+            scope.lastSql = sql;
+        }
+    }
+
+    static void recordJdbcTime(long nanos) {
+        for (QueryMetricsScope scope : SCOPES.get()) {
+            scope.jdbcNanos += nanos;
+        }
+    }
+
+    static void recordEntityLoaded() {
+        for (QueryMetricsScope scope : SCOPES.get()) {
+            scope.entitiesLoaded++;
+        }
+    }
+}
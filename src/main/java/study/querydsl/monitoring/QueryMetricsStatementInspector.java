@@ -0,0 +1,16 @@
+package study.querydsl.monitoring;
+
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+
+/**
+ * 하이버네이트가 준비하는 SQL 을 현재 스코프에 센다. SQL 은 바꾸지 않는다.
+ * hibernate.session_factory.statement_inspector 로 등록한다.
+ */
+public class QueryMetricsStatementInspector implements StatementInspector {
+
+    @Override
+    public String inspect(String sql) {
+        QueryMetricsScope.recordStatement(sql);
+        return sql;
+    }
+}
@@ -0,0 +1,114 @@
+package study.querydsl.monitoring;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import lombok.RequiredArgsConstructor;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.springframework.data.domain.Slice;
+import org.springframework.stereotype.Component;
+import org.springframework.util.ClassUtils;
+import study.querydsl.dto.CursorSlice;
+import study.querydsl.dto.MemberSearchCondition;
+import study.querydsl.repository.support.MemberSearchQueryCache;
+
+import java.util.Collection;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 회원 리포지토리 메서드별 쿼리 메트릭.
+ * - member.repository.latency   : 메서드 실행 시간 (히스토그램)
+ * - member.repository.jdbc      : 그 중 JDBC 실행 시간
+ * - member.repository.statements: 나간 SQL 수
+ * - member.repository.rows      : 반환한 행 수
+ * - member.repository.entities  : 로딩한 엔티티 수
+ * 모두 method, shape(MemberSearchCondition 모양) 태그가 붙는다.
+ */
+@Aspect
+@Component
+@RequiredArgsConstructor
+public class RepositoryMetricsAspect {
+
+    private static final String NO_CONDITION = "n/a";
+
+    private final MeterRegistry meterRegistry;
+
+    @Around("execution(public * study.querydsl.repository.MemberJpaRepository.*(..))"
+            + " || (execution(* study.querydsl.repository.MemberRepositoryCustom.*(..))"
+            + " && target(study.querydsl.repository.MemberRepositoryImpl))")
+    public Object measure(ProceedingJoinPoint joinPoint) throws Throwable {
+        String method = ClassUtils.getUserClass(joinPoint.getTarget()).getSimpleName()
+                + "." + joinPoint.getSignature().getName();
+        String shape = shapeOf(joinPoint.getArgs());
+
+        QueryMetricsScope scope = QueryMetricsScope.open(method, shape);
+        long start = System.nanoTime();
+        Object result = null;
+        try {
+            result = joinPoint.proceed();
+            return result;
+        } finally {
+            long elapsed = System.nanoTime() - start;
+            scope.close();
+            record(scope, elapsed, result);
+        }
+    }
+
+    private void record(QueryMetricsScope scope, long elapsedNanos, Object result) {
+        Tags tags = Tags.of("method", scope.getMethod(), "shape", scope.getShape());
+
+        Timer.builder("member.repository.latency")
+                .tags(tags)
+                .publishPercentileHistogram()
+                .register(meterRegistry)
+                .record(elapsedNanos, TimeUnit.NANOSECONDS);
+        Timer.builder("member.repository.jdbc")
+                .tags(tags)
+                .register(meterRegistry)
+                .record(scope.getJdbcNanos(), TimeUnit.NANOSECONDS);
+        DistributionSummary.builder("member.repository.statements")
+                .tags(tags)
+                .register(meterRegistry)
+                .record(scope.getStatements());
+        DistributionSummary.builder("member.repository.rows")
+                .tags(tags)
+                .register(meterRegistry)
+                .record(rowsOf(result));
+        DistributionSummary.builder("member.repository.entities")
+                .tags(tags)
+                .register(meterRegistry)
+                .record(scope.getEntitiesLoaded());
+    }
+
+    private static String shapeOf(Object[] args) {
+        for (Object arg : args) {
+            if (arg instanceof MemberSearchCondition) {
+                return MemberSearchQueryCache.describe(MemberSearchQueryCache.shapeOf((MemberSearchCondition) arg));
+            }
+        }
+        return NO_CONDITION;
+    }
+
+    private static long rowsOf(Object result) {
+        if (result instanceof Collection) {
+            return ((Collection<?>) result).size();
+        }
+        if (result instanceof Slice) {
+            return ((Slice<?>) result).getNumberOfElements();
+        }
+        if (result instanceof CursorSlice) {
+            return ((CursorSlice<?>) result).getContent().size();
+        }
+        if (result instanceof Optional) {
+            return ((Optional<?>) result).isPresent() ? 1 : 0;
+        }
+        if (result instanceof Long) {
+            return (Long) result;                           //streamSearch 는 넘긴 건수를 반환한다
+        }
+        return 0;
+    }
+}
@@ -0,0 +1,25 @@
+package study.querydsl.monitoring;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.stereotype.Component;
+import study.querydsl.repository.support.MemberSearchQueryCache;
+
+import java.util.Map;
+
+/**
+ * /actuator/searchquerycache : 검색 조건 모양별 JPQL 캐시 적중 / 미스 횟수와 적중률
+ */
+@Component
+@Endpoint(id = "searchquerycache")
+@RequiredArgsConstructor
+public class SearchQueryCacheEndpoint {
+
+    private final MemberSearchQueryCache searchQueryCache;
+
+    @ReadOperation
+    public Map<String, MemberSearchQueryCache.ShapeStats> shapes() {
+        return searchQueryCache.stats();
+    }
+}
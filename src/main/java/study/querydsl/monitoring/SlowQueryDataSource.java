@@ -0,0 +1,139 @@
+package study.querydsl.monitoring;
+
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Arrays;
+
+/**
+ * PreparedStatement 실행 시간을 재고, 바인딩한 파라미터를 들고 있다가 느린 실행만 SlowQueryRecorder 로 넘긴다.
+ * 하이버네이트의 StatementInspector / SessionEventListener 로는 파라미터 값을 볼 수 없어서 JDBC 단에서 감싼다.
+ * 빠른 실행은 파라미터를 문자열로 바꾸지도 복사하지도 않는다.
+ *
+ * 잰 시간은 execute* 호출까지이고 ResultSet 을 읽는 시간은 들어가지 않는다.
+ * executeBatch 는 마지막 행의 파라미터만 남는다. prepareCall / createStatement 는 감싸지 않는다.
+ */
+public class SlowQueryDataSource extends DelegatingDataSource {
+
+    private final ObjectProvider<SlowQueryRecorder> recorderProvider;
+    private volatile SlowQueryRecorder recorder;
+
+    public SlowQueryDataSource(DataSource target, ObjectProvider<SlowQueryRecorder> recorderProvider) {
+        super(target);
+        this.recorderProvider = recorderProvider;
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        return wrap(obtainTargetDataSource().getConnection());
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        return wrap(obtainTargetDataSource().getConnection(username, password));
+    }
+
+    private Connection wrap(Connection connection) {
+        return (Connection) Proxy.newProxyInstance(SlowQueryDataSource.class.getClassLoader(),
+                new Class<?>[]{Connection.class}, new ConnectionHandler(connection));
+    }
+
+    //DataSource 는 레코더보다 먼저 만들어지므로 첫 실행 때 꺼낸다
+    private SlowQueryRecorder recorder() {
+        SlowQueryRecorder current = recorder;
+        if (current == null) {
+            current = recorderProvider.getIfAvailable();
+            recorder = current;
+        }
+        return current;
+    }
+
+    private static Object proceed(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    private class ConnectionHandler implements InvocationHandler {
+
+        private final Connection connection;
+
+        ConnectionHandler(Connection connection) {
+            this.connection = connection;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            Object result = proceed(connection, method, args);
+            if ("prepareStatement".equals(method.getName()) && result instanceof PreparedStatement) {
+                return Proxy.newProxyInstance(SlowQueryDataSource.class.getClassLoader(),
+                        new Class<?>[]{PreparedStatement.class},
+                        new StatementHandler((PreparedStatement) result, (String) args[0]));
+            }
+            return result;
+        }
+    }
+
+    private class StatementHandler implements InvocationHandler {
+
+        private static final int INITIAL_PARAMETERS = 8;
+
+        private final PreparedStatement statement;
+        private final String sql;
+        private Object[] parameters = new Object[INITIAL_PARAMETERS];
+        private int parameterCount;
+
+        StatementHandler(PreparedStatement statement, String sql) {
+            this.statement = statement;
+            this.sql = sql;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            if (name.startsWith("execute") && (args == null || args.length == 0)) {
+                long start = System.nanoTime();
+                try {
+                    return proceed(statement, method, null);
+                } finally {
+                    executed(System.nanoTime() - start);
+                }
+            }
+            if (name.startsWith("set") && args != null && args.length >= 2 && args[0] instanceof Integer) {
+                bind((Integer) args[0], "setNull".equals(name) ? null : args[1]);
+            } else if ("clearParameters".equals(name)) {
+                Arrays.fill(parameters, 0, parameterCount, null);
+                parameterCount = 0;
+            }
+            return proceed(statement, method, args);
+        }
+
+        private void bind(int index, Object value) {
+            if (index < 1) {
+                return;
+            }
+            if (index > parameters.length) {
+                parameters = Arrays.copyOf(parameters, Math.max(index, parameters.length * 2));
+            }
+            parameters[index - 1] = value;
+            parameterCount = Math.max(parameterCount, index);
+        }
+
+        private void executed(long elapsedNanos) {
+            SlowQueryRecorder current = recorder();
+            if (current != null && current.isSlow(elapsedNanos)) {
+                current.record(obtainTargetDataSource(), sql, Arrays.copyOf(parameters, parameterCount), elapsedNanos);
+            }
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package study.querydsl.monitoring;
+
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+
+/**
+ * JPA 가 쓰는 "dataSource" 빈만 SlowQueryDataSource 로 감싼다.
+ * (replica 설정의 primary / replica 풀은 그 아래에 있으므로 두 번 재지 않는다)
+ */
+@Component
+public class SlowQueryDataSourcePostProcessor implements BeanPostProcessor {
+
+    private static final String DATA_SOURCE_BEAN = "dataSource";
+
+    private final ObjectProvider<SlowQueryRecorder> recorderProvider;
+    private final boolean enabled;
+
+    public SlowQueryDataSourcePostProcessor(ObjectProvider<SlowQueryRecorder> recorderProvider,
+                                            @Value("${querydsl.slow-query.enabled:true}") boolean enabled) {
+        this.recorderProvider = recorderProvider;
+        this.enabled = enabled;
+    }
+
+    @Override
+    public Object postProcessAfterInitialization(Object bean, String beanName) {
+        if (enabled && DATA_SOURCE_BEAN.equals(beanName) && bean instanceof DataSource
+                && !(bean instanceof SlowQueryDataSource)) {
+            return new SlowQueryDataSource((DataSource) bean, recorderProvider);
+        }
+        return bean;
+    }
+}
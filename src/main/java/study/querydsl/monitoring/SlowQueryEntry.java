@@ -0,0 +1,25 @@
+package study.querydsl.monitoring;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * /actuator/slowqueries 항목. method / parameters / maxMillis 는 가장 느렸던 실행 기준이다.
+ * plan 은 EXPLAIN 이 끝나기 전이거나 select 가 아니면 null
+ */
+@Getter
+@AllArgsConstructor
+public class SlowQueryEntry {
+    private final String method;
+    private final String jpql;
+    private final String sql;
+    private final List<String> parameters;
+    private final double maxMillis;
+    private final long count;
+    private final LocalDateTime firstSeen;
+    private final LocalDateTime lastSeen;
+    private final String plan;
+}
@@ -0,0 +1,219 @@
+package study.querydsl.monitoring;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 임계값(querydsl.slow-query.threshold)보다 오래 걸린 SQL 을 모은다. SlowQueryDataSource 가 넘겨 준다.
+ * SQL 문장별로 가장 느렸던 실행 하나(파라미터, 호출한 리포지토리 메서드)와 횟수를 남기고,
+ * 최대 querydsl.slow-query.capacity 개를 넘으면 가장 덜 느린 항목을 버린다.
+ *
+ * 새 문장이 들어오면 별도 스레드에서 그 파라미터로 EXPLAIN 을 한 번 돌려 실행 계획을 붙인다. (select 만, H2 포맷)
+ * EXPLAIN 대기열이 차면 계획 없이 남긴다. 요청 스레드는 EXPLAIN 을 기다리지 않는다.
+ * JPQL 은 use_sql_comments 가 SQL 앞에 붙인 주석에서 꺼낸다.
+ */
+@Slf4j
+@Component
+public class SlowQueryRecorder {
+
+    private static final int MAX_PARAMETERS = 100;
+    private static final int MAX_VALUE_LENGTH = 200;
+    private static final int EXPLAIN_QUEUE = 100;
+    private static final String NO_METHOD = "n/a";
+    private static final String EXPLAIN = "EXPLAIN ";
+
+    private final long thresholdNanos;
+    private final int capacity;
+    private final boolean explain;
+    private final Map<String, Offender> offenders = new HashMap<>();
+    private final ThreadPoolExecutor explainExecutor;
+
+    public SlowQueryRecorder(@Value("${querydsl.slow-query.threshold:200ms}") Duration threshold,
+                             @Value("${querydsl.slow-query.capacity:50}") int capacity,
+                             @Value("${querydsl.slow-query.explain:true}") boolean explain) {
+        this.thresholdNanos = threshold.toNanos();
+        this.capacity = capacity;
+        this.explain = explain;
+        this.explainExecutor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(EXPLAIN_QUEUE), runnable -> {
+            Thread thread = new Thread(runnable, "slow-query-explain");
+            thread.setDaemon(true);
+            return thread;
+        }, new ThreadPoolExecutor.DiscardPolicy());
+    }
+
+    public boolean isSlow(long elapsedNanos) {
+        return elapsedNanos >= thresholdNanos;
+    }
+
+    /**
+     * @param dataSource EXPLAIN 을 돌릴 원래 DataSource (감싸지 않은 것)
+     */
+    void record(DataSource dataSource, String sql, Object[] parameters, long elapsedNanos) {
+        if (sql.regionMatches(true, 0, EXPLAIN, 0, EXPLAIN.length())) {
+            return;
+        }
+        QueryMetricsScope scope = QueryMetricsScope.current();
+        String method = scope != null ? scope.getMethod() : NO_METHOD;
+
+        Offender offender;
+        synchronized (this) {
+            offender = offenders.get(sql);
+            if (offender != null) {
+                offender.count++;
+                offender.lastSeen = LocalDateTime.now();
+                if (elapsedNanos <= offender.maxNanos) {
+                    return;
+                }
+                offender.worst(method, parameters, elapsedNanos);
+            } else {
+                if (offenders.size() >= capacity && !evictFasterThan(elapsedNanos)) {
+                    return;
+                }
+                offender = new Offender(sql);
+                offender.worst(method, parameters, elapsedNanos);
+                offenders.put(sql, offender);
+                if (explain && isSelect(offender.sql)) {
+                    Offender explained = offender;
+                    explainExecutor.execute(() -> explain(explained, dataSource, parameters));
+                }
+            }
+        }
+        log.warn("slow query {} ms [{}] {}", TimeUnit.NANOSECONDS.toMillis(elapsedNanos), method, sql);
+    }
+
+    //가장 덜 느린 항목이 이번 실행보다 빠르면 버리고 자리를 만든다
+    private boolean evictFasterThan(long elapsedNanos) {
+        Offender fastest = null;
+        for (Offender candidate : offenders.values()) {
+            if (fastest == null || candidate.maxNanos < fastest.maxNanos) {
+                fastest = candidate;
+            }
+        }
+        if (fastest == null || fastest.maxNanos >= elapsedNanos) {
+            return false;
+        }
+        offenders.remove(fastest.sql);
+        return true;
+    }
+
+    private void explain(Offender offender, DataSource dataSource, Object[] parameters) {
+        StringBuilder plan = new StringBuilder();
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement statement = connection.prepareStatement(EXPLAIN + withoutComment(offender.sql))) {
+            for (int i = 0; i < parameters.length; i++) {
+                statement.setObject(i + 1, parameters[i]);
+            }
+            try (ResultSet rs = statement.executeQuery()) {
+                while (rs.next()) {
+                    plan.append(rs.getString(1)).append('\n');
+                }
+            }
+            offender.plan = plan.toString();
+        } catch (SQLException | RuntimeException e) {
+            offender.plan = "EXPLAIN failed: " + e.getMessage();
+        }
+    }
+
+    /**
+     * 가장 느린 순
+     */
+    public synchronized List<SlowQueryEntry> worstOffenders() {
+        List<SlowQueryEntry> entries = new ArrayList<>(offenders.size());
+        for (Offender offender : offenders.values()) {
+            entries.add(offender.toEntry());
+        }
+        entries.sort(Comparator.comparingDouble(SlowQueryEntry::getMaxMillis).reversed());
+        return entries;
+    }
+
+    public synchronized void clear() {
+        offenders.clear();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        explainExecutor.shutdownNow();
+    }
+
+    //use_sql_comments 가 붙인 "/* JPQL */ select ..." 의 주석 부분
+    static String jpqlOf(String sql) {
+        if (!sql.startsWith("/*")) {
+            return null;
+        }
+        int end = sql.indexOf("*/");
+        return end < 0 ? null : sql.substring(2, end).trim();
+    }
+
+    static String withoutComment(String sql) {
+        if (!sql.startsWith("/*")) {
+            return sql;
+        }
+        int end = sql.indexOf("*/");
+        return end < 0 ? sql : sql.substring(end + 2).trim();
+    }
+
+    private static boolean isSelect(String sql) {
+        String statement = withoutComment(sql).toLowerCase(Locale.ROOT);
+        return statement.startsWith("select") || statement.startsWith("with");
+    }
+
+    private static List<String> describe(Object[] parameters) {
+        int shown = Math.min(parameters.length, MAX_PARAMETERS);
+        List<String> values = new ArrayList<>(shown + 1);
+        for (int i = 0; i < shown; i++) {
+            String value = String.valueOf(parameters[i]);
+            values.add(value.length() > MAX_VALUE_LENGTH ? value.substring(0, MAX_VALUE_LENGTH) + "..." : value);
+        }
+        if (parameters.length > shown) {
+            values.add("... " + (parameters.length - shown) + " more");
+        }
+        return values;
+    }
+
+    //recorder 락 안에서만 고친다. plan 만 EXPLAIN 스레드가 쓴다
+    private static class Offender {
+        private final String sql;
+        private final LocalDateTime firstSeen = LocalDateTime.now();
+        private LocalDateTime lastSeen = firstSeen;
+        private long count = 1;
+        private long maxNanos;
+        private String method;
+        private List<String> parameters;
+        private volatile String plan;
+
+        Offender(String sql) {
+            this.sql = sql;
+        }
+
+        void worst(String method, Object[] parameters, long elapsedNanos) {
+            this.method = method;
+            this.parameters = describe(parameters);
+            this.maxNanos = elapsedNanos;
+        }
+
+        SlowQueryEntry toEntry() {
+            return new SlowQueryEntry(method, jpqlOf(sql), withoutComment(sql), parameters,
+                    maxNanos / 1_000_000.0, count, firstSeen, lastSeen, plan);
+        }
+    }
+}
@@ -0,0 +1,228 @@
+package study.querydsl.repository;
+
+import com.querydsl.core.Tuple;
+import com.querydsl.jpa.impl.JPAQueryFactory;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+import study.querydsl.dto.ChangeDto;
+import study.querydsl.dto.CursorSlice;
+import study.querydsl.dto.MemberTeamDto;
+import study.querydsl.dto.QMemberTeamDto;
+import study.querydsl.entity.ChangeLog;
+import study.querydsl.repository.support.ChangeFeedResetException;
+import study.querydsl.repository.support.ChangeLogWriter;
+import study.querydsl.repository.support.ChangeToken;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static study.querydsl.entity.QChangeLog.changeLog;
+import static study.querydsl.entity.QMember.member;
+import static study.querydsl.entity.QTeam.team;
+
+/**
+ * 변경 피드. 토큰 이후의 change_log 를 id 순서로 limit 건씩 읽고, 바뀐 회원/팀의 현재 값을 붙여 준다.
+ * 비용은 테이블 크기가 아니라 그 사이 변경 건수에 비례한다.
+ *
+ * id 는 커밋 직전에 받으므로, 커밋 중인 트랜잭션의 작은 id 가 큰 id 보다 나중에 보일 수 있다.
+ * 그래서 id 를 하나씩 이어서 읽다가 다음 id 가 비어 있으면 거기서 멈추고, 빈 것을 처음 본 시각을 토큰에 남긴다.
+ * 커밋이 끝나면 다음 요청에서 이어서 읽는다.
+ * - single-writer(querydsl.username-index.single-writer) : change_log 를 쓰는 트랜잭션이 모두 이 JVM 에 있으므로
+ *   쓰는 쪽 진행 중 목록(ChangeLogWriter.inFlightFloor) 아래의 빈 id 는 롤백된 것이다. 기다리지 않고 바로 건너뛴다.
+ * - 그 밖 : gap-timeout(기본 1분, 읽는 쪽 시계) 동안 끝내 안 보이면 롤백된 것으로 보고 건너뛴다.
+ * 멈춘 횟수와 건너뛴 횟수는 member.changes.gap.waits / member.changes.gap.skips{reason} 으로 본다.
+ * changed_at 은 트랜잭션 시작 시각이라 커밋 순서와 상관없으므로 보관 기간 계산과 표시에만 쓴다.
+ * 보관 기간(querydsl.change-feed.retention)보다 오래된 토큰은 그 사이 기록이 지워졌으므로 전체를 다시 받아야 한다.
+ * 기록 없이 데이터를 바꾼 작업이 남긴 RESET 에 닿으면 그 앞까지 돌려주고, 다음 요청에서 ChangeFeedResetException 을 던진다.
+ */
+@Repository
+public class ChangeLogRepository {
+
+    private static final int HEAD_WINDOW = 100;
+
+    private final JPAQueryFactory queryFactory;
+    private final Duration gapTimeout;
+    private final boolean singleWriter;
+    private final Counter gapWaits;
+    private final Counter horizonSkips;
+    private final Counter timeoutSkips;
+
+    public ChangeLogRepository(JPAQueryFactory queryFactory, MeterRegistry meterRegistry,
+                               @Value("${querydsl.change-feed.gap-timeout:1m}") Duration gapTimeout,
+                               @Value("${querydsl.username-index.single-writer:false}") boolean singleWriter) {
+        this.queryFactory = queryFactory;
+        this.gapTimeout = gapTimeout;
+        this.singleWriter = singleWriter;
+        //waits 가 계속 늘면 읽는 쪽이 빈 id 앞에서 멈춰 있는 것이다
+        this.gapWaits = Counter.builder("member.changes.gap.waits").register(meterRegistry);
+        this.horizonSkips = Counter.builder("member.changes.gap.skips").tag("reason", "horizon").register(meterRegistry);
+        this.timeoutSkips = Counter.builder("member.changes.gap.skips").tag("reason", "timeout").register(meterRegistry);
+    }
+
+    @Transactional(readOnly = true)
+    public CursorSlice<ChangeDto> findChanges(String since, int limit) {
+        ChangeToken token = ChangeToken.decode(since);
+        long now = System.currentTimeMillis();
+        long horizon = singleWriter ? finishedHorizon() : 0;
+
+        List<ChangeLog> rows = queryFactory
+                .selectFrom(changeLog)
+                .where(changeLog.id.gt(token.getLastId()))
+                .orderBy(changeLog.id.asc())
+                .limit(limit + 1)                           //한 건 더 읽어서 다음 배치 존재 여부를 판단
+                .fetch();
+
+        long lastId = token.getLastId();
+        long gapSeenAt = token.getGapSeenAt();
+        boolean hasNext = false;
+        Map<String, ChangeDto> latest = new LinkedHashMap<>();
+        for (int i = 0; i < rows.size(); i++) {
+            ChangeLog row = rows.get(i);
+            //처음부터 읽을 때는 보관 기간으로 지워진 앞부분이 비어 있으므로 보지 않는다
+            if (lastId != 0 && row.getId() != lastId + 1) {
+                if (row.getId() - 1 <= horizon) {
+                    horizonSkips.increment();
+                } else {
+                    if (gapSeenAt == 0) {
+                        gapSeenAt = now;
+                    }
+                    if (now - gapSeenAt < gapTimeout.toMillis()) {
+                        gapWaits.increment();
+                        break;
+                    }
+                    timeoutSkips.increment();
+                }
+            }
+            if (i == limit) {
+                hasNext = true;
+                break;
+            }
+            if (row.getOperation() == ChangeLog.Operation.RESET) {
+                if (latest.isEmpty()) {
+                    throw new ChangeFeedResetException(row.getId());
+                }
+                hasNext = true;                             //모은 변경을 먼저 돌려주고 다음 요청에서 알린다
+                break;
+            }
+            //배치 안에서 같은 엔티티는 마지막 변경 하나로 합친다
+            String key = row.getEntityType() + ":" + row.getEntityId();
+            latest.remove(key);
+            latest.put(key, new ChangeDto(row.getEntityType().name(), row.getEntityId(),
+                    row.getOperation().name(), row.getChangedAt()));
+            lastId = row.getId();
+            gapSeenAt = 0;
+        }
+
+        List<ChangeDto> changes = new ArrayList<>(latest.values());
+        attachCurrentState(changes);
+        return new CursorSlice<>(changes, new ChangeToken(lastId, gapSeenAt).encode(), hasNext);
+    }
+
+    /**
+     * 지금 시점의 토큰. 전체를 한 번 받은 뒤 여기서부터 변경만 따라가면 된다.
+     * (전체 조회보다 먼저 받아 두어야 그 사이 변경을 놓치지 않는다)
+     * 최근 id 중 아직 커밋 중인 것이 있으면 그 앞에서 시작한다. 그 뒤의 변경은 한 번 더 받을 수 있다.
+     */
+    @Transactional(readOnly = true)
+    public String currentToken() {
+        Long maxId = queryFactory
+                .select(changeLog.id.max())
+                .from(changeLog)
+                .fetchOne();
+        if (maxId == null) {
+            return new ChangeToken(0, 0).encode();
+        }
+        List<Long> recent = queryFactory
+                .select(changeLog.id)
+                .from(changeLog)
+                .where(changeLog.id.gt(maxId - HEAD_WINDOW))
+                .orderBy(changeLog.id.asc())
+                .fetch();
+        long lastId = recent.get(0);
+        for (Long id : recent) {
+            if (id > lastId + 1) {
+                return new ChangeToken(lastId, System.currentTimeMillis()).encode();
+            }
+            lastId = id;
+        }
+        return new ChangeToken(lastId, 0).encode();
+    }
+
+    /**
+     * 이 id 이하를 받은 트랜잭션은 모두 끝났다. (커밋됐으면 보이고, 안 보이면 롤백)
+     * 최대 id 를 먼저 읽어서, 그 뒤에 쓰기 시작한 트랜잭션의 id 는 판단하지 않는다.
+     */
+    private long finishedHorizon() {
+        Long maxId = queryFactory
+                .select(changeLog.id.max())
+                .from(changeLog)
+                .fetchOne();
+        return Math.min(maxId != null ? maxId : 0, ChangeLogWriter.inFlightFloor());
+    }
+
+    @Transactional
+    public long deleteOlderThan(LocalDateTime threshold) {
+        return queryFactory
+                .delete(changeLog)
+                .where(changeLog.changedAt.lt(threshold))
+                .execute();
+    }
+
+    private void attachCurrentState(List<ChangeDto> changes) {
+        List<Long> memberIds = idsOf(changes, ChangeLog.EntityType.MEMBER);
+        List<Long> teamIds = idsOf(changes, ChangeLog.EntityType.TEAM);
+
+        Map<Long, MemberTeamDto> members = memberIds.isEmpty() ? Map.of() : queryFactory
+                .select(new QMemberTeamDto(
+                        member.id.as("memberId"),
+                        member.username,
+                        member.age,
+                        team.id.as("teamId"),
+                        team.name.as("teamName")
+                ))
+                .from(member)
+                .leftJoin(member.team, team)
+                .where(member.id.in(memberIds))
+                .fetch()
+                .stream()
+                .collect(Collectors.toMap(MemberTeamDto::getMemberId, Function.identity()));
+
+        Map<Long, String> teams = new HashMap<>();
+        if (!teamIds.isEmpty()) {
+            for (Tuple tuple : queryFactory
+                    .select(team.id, team.name)
+                    .from(team)
+                    .where(team.id.in(teamIds))
+                    .fetch()) {
+                teams.put(tuple.get(team.id), tuple.get(team.name));
+            }
+        }
+
+        for (ChangeDto change : changes) {
+            if (ChangeLog.EntityType.MEMBER.name().equals(change.getEntityType())) {
+                change.setMember(members.get(change.getEntityId()));
+            } else {
+                change.setTeamName(teams.get(change.getEntityId()));
+            }
+        }
+    }
+
+    //삭제된 엔티티는 현재 값이 없다
+    private static List<Long> idsOf(List<ChangeDto> changes, ChangeLog.EntityType type) {
+        return changes.stream()
+                .filter(change -> type.name().equals(change.getEntityType()))
+                .filter(change -> !ChangeLog.Operation.DELETE.name().equals(change.getOperation()))
+                .map(ChangeDto::getEntityId)
+                .collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,268 @@
+package study.querydsl.repository;
+
+import com.querydsl.core.Tuple;
+import com.querydsl.core.types.Predicate;
+import com.querydsl.core.types.dsl.BooleanExpression;
+import com.querydsl.jpa.impl.JPAQueryFactory;
+import com.querydsl.jpa.impl.JPAUpdateClause;
+import org.hibernate.engine.spi.SessionImplementor;
+import org.hibernate.persister.entity.EntityPersister;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import study.querydsl.entity.ChangeLog;
+import study.querydsl.entity.Member;
+import study.querydsl.repository.support.BulkProgress;
+import study.querydsl.repository.support.ChangeLogWriter;
+import study.querydsl.repository.support.MemberSearchResultCache;
+import study.querydsl.repository.support.TeamStatsWriter;
+import study.querydsl.repository.support.UsernameLookupIndex;
+import study.querydsl.repository.support.UsernameTrigramIndex;
+
+import javax.persistence.EntityManager;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
+
+import static study.querydsl.entity.QMember.member;
+
+/**
+ * Member 벌크 update / delete 를 id 순서의 청크로 나눠 청크마다 커밋한다.
+ * 한 번의 execute() 로 테이블 전체를 잠그고 거대한 undo 로그를 만드는 대신, 잠금은 청크 하나의 id 범위에만 걸린다.
+ * where 에는 member 경로만 쓸 수 있다. (벌크 JPQL 은 조인을 못 한다)
+ * 중간에 실패하면 이미 커밋한 청크는 남으므로, 조건은 다시 실행해도 안전하게(멱등) 작성하거나
+ * 마지막으로 받은 BulkProgress.lastId 를 startAfterId 로 넘겨 그 다음 id 부터 이어서 실행한다.
+ *
+ * 청크는 REQUIRES_NEW 로 따로 커밋하므로 읽기/쓰기 트랜잭션 안에서 부르면 아무것도 실행하지 않고 바로 실패한다.
+ * (호출한 쪽이 잡은 행 잠금을 청크가 기다리다 타임아웃 나고, detach 하면 호출한 쪽의 flush 안 된 변경이 사라진다)
+ * 트랜잭션 밖이나 읽기 전용 트랜잭션 안에서 부른다.
+ *
+ * 벌크 JPQL 은 엔티티 이벤트를 내지 않으므로 청크마다 대신 맞춰 준다.
+ * - 호출한 쪽 읽기 전용 영속성 컨텍스트에 올라와 있는 대상 회원만 detach (나머지 엔티티는 그대로)
+ * - 영향받은 팀의 team_stats 재계산 (같은 청크 트랜잭션 안)
+ * - update 는 커밋 후 username trigram 색인에 다시 넣는다
+ * - 대상 회원을 change_log 에 기록 (같은 청크 트랜잭션 안)
+ * - 커밋 후 검색 결과 캐시를 비운다
+ * Member 와 Team.members 컬렉션은 2차 캐시 대상이 아니다. (Team 엔티티만 캐시)
+ */
+@Repository
+public class MemberBulkRepository {
+
+    private final EntityManager em;
+    private final JPAQueryFactory queryFactory;
+    private final TransactionTemplate chunkTx;
+    private final UsernameTrigramIndex usernameTrigramIndex;
+    private final UsernameLookupIndex usernameLookupIndex;
+    private final MemberSearchResultCache searchResultCache;
+    private final int defaultChunkSize;
+
+    public MemberBulkRepository(EntityManager em, JPAQueryFactory queryFactory,
+                                PlatformTransactionManager transactionManager,
+                                UsernameTrigramIndex usernameTrigramIndex,
+                                UsernameLookupIndex usernameLookupIndex,
+                                MemberSearchResultCache searchResultCache,
+                                @Value("${querydsl.bulk.chunk-size:1000}") int defaultChunkSize) {
+        this.em = em;
+        this.queryFactory = queryFactory;
+        this.chunkTx = new TransactionTemplate(transactionManager);
+        this.chunkTx.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.usernameTrigramIndex = usernameTrigramIndex;
+        this.usernameLookupIndex = usernameLookupIndex;
+        this.searchResultCache = searchResultCache;
+        this.defaultChunkSize = defaultChunkSize;
+    }
+
+    public long update(Predicate where, Consumer<JPAUpdateClause> assignments, Consumer<BulkProgress> progress) {
+        return update(where, assignments, defaultChunkSize, progress);
+    }
+
+    /**
+     * 예) update(member.age.lt(28), clause -> clause.set(member.age, member.age.add(1)), 1000, progress -> log.info(...))
+     *
+     * @return 바뀐 행 수
+     */
+    public long update(Predicate where, Consumer<JPAUpdateClause> assignments, int chunkSize,
+                       Consumer<BulkProgress> progress) {
+        return update(where, assignments, chunkSize, null, progress);
+    }
+
+    /**
+     * @param startAfterId 이 id 다음부터 처리한다 (중단된 실행의 마지막 BulkProgress.lastId), null 이면 처음부터
+     * @return 이번 실행에서 바뀐 행 수
+     */
+    public long update(Predicate where, Consumer<JPAUpdateClause> assignments, int chunkSize, Long startAfterId,
+                       Consumer<BulkProgress> progress) {
+        return run(where, chunkSize, startAfterId, progress, true, (first, last) -> {
+            JPAUpdateClause clause = queryFactory.update(member);
+            assignments.accept(clause);
+            return clause.where(member.id.between(first, last), where).execute();
+        });
+    }
+
+    public long delete(Predicate where, Consumer<BulkProgress> progress) {
+        return delete(where, defaultChunkSize, progress);
+    }
+
+    public long delete(Predicate where, int chunkSize, Consumer<BulkProgress> progress) {
+        return delete(where, chunkSize, null, progress);
+    }
+
+    /**
+     * @param startAfterId 이 id 다음부터 처리한다 (중단된 실행의 마지막 BulkProgress.lastId), null 이면 처음부터
+     * @return 이번 실행에서 지운 행 수
+     */
+    public long delete(Predicate where, int chunkSize, Long startAfterId, Consumer<BulkProgress> progress) {
+        return run(where, chunkSize, startAfterId, progress, false, (first, last) -> queryFactory
+                .delete(member)
+                .where(member.id.between(first, last), where)
+                .execute());
+    }
+
+    private long run(Predicate where, int chunkSize, Long startAfterId, Consumer<BulkProgress> progress,
+                     boolean update, ChunkStatement statement) {
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("chunkSize must be positive: " + chunkSize);
+        }
+        if (TransactionSynchronizationManager.isActualTransactionActive()
+                && !TransactionSynchronizationManager.isCurrentTransactionReadOnly()) {
+            throw new IllegalStateException("bulk member update/delete commits per chunk;"
+                    + " call it outside a read-write transaction");
+        }
+        long start = System.currentTimeMillis();
+        long affected = 0;
+        int chunks = 0;
+        Long lastId = startAfterId;
+
+        while (true) {
+            Long after = lastId;
+            Chunk chunk = chunkTx.execute(status -> executeChunk(where, after, chunkSize, update, statement));
+            if (chunk == null) {
+                return affected;
+            }
+            detachFromCurrentContext(chunk.ids);
+            searchResultCache.invalidateAll();
+
+            affected += chunk.affected;
+            chunks++;
+            lastId = chunk.ids.get(chunk.ids.size() - 1);
+            progress.accept(new BulkProgress(chunks, affected, lastId, System.currentTimeMillis() - start));
+
+            if (chunk.ids.size() < chunkSize) {
+                return affected;
+            }
+        }
+    }
+
+    /**
+     * 조건에 맞는 다음 chunkSize 건의 id 범위를 잡고 그 범위에만 문장을 실행한다.
+     * 조건을 범위와 함께 다시 걸어 두므로 그 사이 바뀐 행은 건드리지 않는다.
+     */
+    private Chunk executeChunk(Predicate where, Long after, int chunkSize, boolean update, ChunkStatement statement) {
+        List<Tuple> rows = queryFactory
+                .select(member.id, member.team.id)
+                .from(member)
+                .where(where, idGt(after))
+                .orderBy(member.id.asc())
+                .limit(chunkSize)
+                .fetch();
+        if (rows.isEmpty()) {
+            return null;
+        }
+
+        List<Long> ids = new ArrayList<>(rows.size());
+        Set<Long> teamIds = new LinkedHashSet<>();
+        for (Tuple row : rows) {
+            ids.add(row.get(member.id));
+            addIfPresent(teamIds, row.get(member.team.id));
+        }
+
+        long affected = statement.execute(ids.get(0), ids.get(ids.size() - 1));
+
+        if (update) {
+            //팀이 바뀌었으면 옮겨 간 팀도 다시 센다
+            List<Tuple> updated = queryFactory
+                    .select(member.id, member.username, member.team.id)
+                    .from(member)
+                    .where(member.id.in(ids))
+                    .fetch();
+            for (Tuple row : updated) {
+                addIfPresent(teamIds, row.get(member.team.id));
+            }
+            reindexAfterCommit(updated);
+        }
+        TeamStatsWriter.recompute(em, teamIds);
+        ChangeLogWriter.write(em, changesOf(ids, update ? ChangeLog.Operation.UPDATE : ChangeLog.Operation.DELETE));
+
+        return new Chunk(ids, affected);
+    }
+
+    //범위 안 대상 id 를 모두 기록한다. 그 사이 조건에서 빠진 행이 있으면 클라이언트가 바뀌지 않은 값을 한 번 더 받을 뿐이다
+    private static List<ChangeLogWriter.Change> changesOf(List<Long> ids, ChangeLog.Operation operation) {
+        List<ChangeLogWriter.Change> changes = new ArrayList<>(ids.size());
+        for (Long id : ids) {
+            changes.add(new ChangeLogWriter.Change(ChangeLog.EntityType.MEMBER, id, operation));
+        }
+        return changes;
+    }
+
+    private void reindexAfterCommit(List<Tuple> rows) {
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                for (Tuple row : rows) {
+                    usernameTrigramIndex.reindex(row.get(member.id), row.get(member.username));
+                    usernameLookupIndex.reindex(row.get(member.id), row.get(member.username));
+                }
+            }
+        });
+    }
+
+    /**
+     * 호출한 쪽 읽기 전용 트랜잭션의 영속성 컨텍스트에 대상 회원이 올라와 있으면 detach 해서 다음 조회 때 DB 값을 읽게 한다.
+     * 읽기 전용이라 flush 할 변경이 없으므로 잃는 것이 없다. (읽기/쓰기 트랜잭션은 run 에서 막는다)
+     */
+    private void detachFromCurrentContext(List<Long> ids) {
+        if (!TransactionSynchronizationManager.isActualTransactionActive()) {
+            return;
+        }
+        SessionImplementor session = em.unwrap(SessionImplementor.class);
+        EntityPersister persister = session.getFactory().getMetamodel().entityPersister(Member.class);
+        for (Long id : ids) {
+            Object entity = session.getPersistenceContext().getEntity(session.generateEntityKey(id, persister));
+            if (entity != null) {
+                em.detach(entity);
+            }
+        }
+    }
+
+    private static void addIfPresent(Set<Long> teamIds, Long teamId) {
+        if (teamId != null) {
+            teamIds.add(teamId);
+        }
+    }
+
+    private BooleanExpression idGt(Long lastId) {
+        return lastId != null ? member.id.gt(lastId) : null;
+    }
+
+    @FunctionalInterface
+    private interface ChunkStatement {
+        long execute(Long firstId, Long lastId);
+    }
+
+    private static class Chunk {
+        private final List<Long> ids;
+        private final long affected;
+
+        Chunk(List<Long> ids, long affected) {
+            this.ids = ids;
+            this.affected = affected;
+        }
+    }
+}
@@ -3,29 +3,61 @@ package study.querydsl.repository;
 import com.querydsl.core.BooleanBuilder;
 import com.querydsl.core.types.dsl.BooleanExpression;
 import com.querydsl.jpa.impl.JPAQueryFactory;
+import org.hibernate.annotations.QueryHints;
+import org.hibernate.engine.spi.SessionImplementor;
+import org.hibernate.persister.entity.EntityPersister;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 import org.springframework.util.StringUtils;
 import study.querydsl.dto.MemberSearchCondition;
 import study.querydsl.dto.MemberTeamDto;
 import study.querydsl.dto.QMemberTeamDto;
 import study.querydsl.entity.Member;
+import study.querydsl.entity.Team;
+import study.querydsl.repository.support.MemberSearchQueryCache;
+import study.querydsl.repository.support.MemberSearchResultCache;
+import study.querydsl.repository.support.UsernameLookupIndex;
+import study.querydsl.repository.support.UsernameTrigramIndex;
 
 import javax.persistence.EntityManager;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 import static study.querydsl.entity.QMember.*;
 import static study.querydsl.entity.QTeam.*;
+import static study.querydsl.repository.support.ReadOnlyQueries.readOnly;
 
 @Repository
 public class MemberJpaRepository {
 
+    private static final int STREAM_FETCH_SIZE = 500;
+    private static final int IN_CHUNK_SIZE = 512;   //2의 거듭제곱이라 in_clause_parameter_padding 을 해도 패딩이 없다
+
     private final EntityManager em;
     private final JPAQueryFactory queryFactory;
+    private final MemberSearchQueryCache searchQueryCache;
+    private final UsernameTrigramIndex usernameTrigramIndex;
+    private final MemberSearchResultCache searchResultCache;
+    private final UsernameLookupIndex usernameLookupIndex;
 
-    public MemberJpaRepository(EntityManager em ) {
+    public MemberJpaRepository(EntityManager em, JPAQueryFactory queryFactory, MemberSearchQueryCache searchQueryCache,
+                               UsernameTrigramIndex usernameTrigramIndex, MemberSearchResultCache searchResultCache,
+                               UsernameLookupIndex usernameLookupIndex) {
         this.em = em;
-        this.queryFactory = new JPAQueryFactory(em);
+        this.queryFactory = queryFactory;
+        this.searchQueryCache = searchQueryCache;
+        this.usernameTrigramIndex = usernameTrigramIndex;
+        this.searchResultCache = searchResultCache;
+        this.usernameLookupIndex = usernameLookupIndex;
     }
 
     public void save(Member member) {
@@ -37,31 +69,106 @@ public class MemberJpaRepository {
         return Optional.ofNullable(findMember);
     }
 
+    /**
+     * id 목록으로 회원 + 팀을 한 번에 조회한다. 결과는 요청한 id 순서이고, 없는 id 는 빠진다. (중복 id 는 한 번만)
+     * 1. 영속성 컨텍스트에 이미 있는 회원은 그대로 쓴다. (Member 는 2차 캐시 대상이 아니다)
+     * 2. 나머지는 IN_CHUNK_SIZE 개씩 member.id in (...) + team fetch join 쿼리 하나로 읽는다.
+     */
+    @Transactional(readOnly = true)
+    public List<Member> findAllByIds(Collection<Long> ids) {
+        Set<Long> requested = new LinkedHashSet<>(ids);
+        requested.remove(null);
+        Map<Long, Member> found = new HashMap<>(requested.size() * 2);
+
+        SessionImplementor session = em.unwrap(SessionImplementor.class);
+        EntityPersister persister = session.getFactory().getMetamodel().entityPersister(Member.class);
+        List<Long> missing = new ArrayList<>();
+        for (Long id : requested) {
+            Object loaded = session.getPersistenceContext().getEntity(session.generateEntityKey(id, persister));
+            if (loaded != null) {
+                found.put(id, (Member) loaded);
+            } else {
+                missing.add(id);
+            }
+        }
+
+        for (int from = 0; from < missing.size(); from += IN_CHUNK_SIZE) {
+            List<Long> chunk = missing.subList(from, Math.min(from + IN_CHUNK_SIZE, missing.size()));
+            for (Member loaded : readOnly(queryFactory
+                    .selectFrom(member)
+                    .leftJoin(member.team, team).fetchJoin()
+                    .where(member.id.in(chunk)), chunk.size())
+                    .fetch()) {
+                found.put(loaded.getId(), loaded);
+            }
+        }
+
+        List<Member> result = new ArrayList<>(found.size());
+        for (Long id : requested) {
+            Member loaded = found.get(id);
+            if (loaded != null) {
+                result.add(loaded);
+            }
+        }
+        return result;
+    }
+
+    //팀 이름까지 트랜잭션 안에서 채운다 (영속성 컨텍스트에 있던 회원의 team 은 프록시일 수 있고, OSIV 가 꺼져 있을 수 있다)
+    @Transactional(readOnly = true)
+    public List<MemberTeamDto> findMemberTeamsByIds(Collection<Long> ids) {
+        List<MemberTeamDto> result = new ArrayList<>(ids.size());
+        for (Member found : findAllByIds(ids)) {
+            Team foundTeam = found.getTeam();
+            result.add(new MemberTeamDto(found.getId(), found.getUsername(), found.getAge(),
+                    foundTeam == null ? null : foundTeam.getId(),
+                    foundTeam == null ? null : foundTeam.getName()));
+        }
+        return result;
+    }
+
+    /**
+     * 조회 메서드는 읽기 전용 트랜잭션 + ReadOnlyQueries 힌트로 실행한다. 읽은 엔티티는 스냅샷 없이 읽기 전용으로 올라온다.
+     * 읽기/쓰기 트랜잭션 안에서 부르면 그 트랜잭션에 참여하고 힌트도 걸지 않으므로, 읽은 엔티티를 고치면 그대로 반영된다.
+     */
+    @Transactional(readOnly = true)
     public List<Member> findAll() {
-        return em.createQuery("select m from Member m", Member.class)
+        return readOnly(em.createQuery("select m from Member m", Member.class))
                 .getResultList();
     }
 
+    @Transactional(readOnly = true)
     public List<Member> findAll_QueryDsl() {
-        return queryFactory
-                .selectFrom(member)
+        return readOnly(queryFactory
+                .selectFrom(member))
                 .fetch();
     }
 
+    //없는 이름은 색인의 Bloom filter 에서 끝나고, 있는 이름은 PK 조회로 간다 (UsernameLookupIndex)
+    @Transactional(readOnly = true)
     public List<Member> findByUsername(String username) {
-        return em.createQuery("select m from Member m where m.username = :username", Member.class)
+        List<Member> indexed = usernameLookupIndex.find(em, username);
+        if (indexed != null) {
+            return indexed;
+        }
+        return readOnly(em.createQuery("select m from Member m where m.username = :username", Member.class))
                 .setParameter("username", username)
                 .getResultList();
     }
 
+    @Transactional(readOnly = true)
     public List<Member> findByUsername_QueryDsl(String username) {
-        return queryFactory
+        List<Member> indexed = usernameLookupIndex.find(em, username);
+        if (indexed != null) {
+            return indexed;
+        }
+        return readOnly(queryFactory
                 .select(member)
                 .from(member)
-                .where(member.username.eq(username))
+                .where(member.username.eq(username)))
                 .fetch();
     }
 
+    @Transactional(readOnly = true)
     public List<MemberTeamDto> searchByBuilder(MemberSearchCondition condition) {
 
         BooleanBuilder builder = new BooleanBuilder();
@@ -77,7 +184,9 @@ public class MemberJpaRepository {
         if (condition.getAgeGoe() != null) {
             builder.and(member.age.loe(condition.getAgeLoe()));
         }
-        return queryFactory
+        builder.and(usernamePrefix(condition.getUsernamePrefix()));
+        builder.and(usernameContains(condition.getUsernameContains()));
+        return readOnly(queryFactory
                 .select(new QMemberTeamDto(
                         member.id.as("memberId"),
                         member.username,
@@ -87,12 +196,28 @@ public class MemberJpaRepository {
                 ))
                 .from(member)
                 .leftJoin(member.team, team)
-                .where(builder)
+                .where(builder))
                 .fetch();
     }
 
+    //조건 모양별로 미리 만들어 둔 JPQL 에 파라미터만 바인딩한다. 결과는 MemberRepository.search 와 같은 캐시 항목을 쓴다
+    @Transactional(readOnly = true)
     public List<MemberTeamDto> search(MemberSearchCondition condition) {
-        return queryFactory
+        return searchResultCache.list(condition, () -> searchQueryCache.search(condition));
+    }
+
+    /**
+     * 결과를 List 로 모으지 않고 forward-only 커서로 한 건씩 넘긴다.
+     * DTO 프로젝션이라 영속성 컨텍스트에 아무것도 쌓이지 않으므로 힙 사용량은 fetch size 만큼으로 일정하다.
+     * (영속성 컨텍스트를 비우지 않으므로 읽기/쓰기 트랜잭션 안에서 불러도 그 트랜잭션의 변경은 그대로 남는다)
+     * 커서가 열려 있는 동안 커넥션을 잡고 있어야 하므로 트랜잭션 안에서 실행한다.
+     *
+     * @return 넘긴 건수
+     */
+    @Transactional(readOnly = true)
+    public long streamSearch(MemberSearchCondition condition, Consumer<MemberTeamDto> action) {
+        long count = 0;
+        try (Stream<MemberTeamDto> stream = readOnly(queryFactory
                 .select(new QMemberTeamDto(
                         member.id.as("memberId"),
                         member.username,
@@ -105,8 +230,19 @@ public class MemberJpaRepository {
                 .where(usernameEq(condition.getUsername()),
                         teamNameEq(condition.getTeamName()),
                         ageGoe(condition.getAgeGoe()),
-                        ageLoe(condition.getAgeLoe()))
-                .fetch();
+                        ageLoe(condition.getAgeLoe()),
+                        usernamePrefix(condition.getUsernamePrefix()),
+                        usernameContains(condition.getUsernameContains())), STREAM_FETCH_SIZE)
+                .setHint(QueryHints.FETCH_SIZE, STREAM_FETCH_SIZE)
+                .stream()) {
+
+            Iterator<MemberTeamDto> iterator = stream.iterator();
+            while (iterator.hasNext()) {
+                action.accept(iterator.next());
+                count++;
+            }
+        }
+        return count;
     }
 
     private BooleanExpression usernameEq(String username) {
@@ -124,4 +260,18 @@ public class MemberJpaRepository {
     private BooleanExpression ageLoe(Integer ageLoe) {
         return ageLoe != null ? member.age.loe(ageLoe) : null;
     }
+
+    private BooleanExpression usernamePrefix(String usernamePrefix) {
+        return StringUtils.hasText(usernamePrefix) ? member.username.startsWith(usernamePrefix) : null;
+    }
+
+    //trigram 색인이 좁힌 후보 안에서만 like 로 확인한다. 색인을 쓸 수 없으면 like '%x%' 그대로
+    private BooleanExpression usernameContains(String usernameContains) {
+        if (!StringUtils.hasText(usernameContains)) {
+            return null;
+        }
+        BooleanExpression contains = member.username.contains(usernameContains);
+        List<Long> candidates = usernameTrigramIndex.lookup(usernameContains);
+        return candidates != null ? member.id.in(candidates).and(contains) : contains;
+    }
 }
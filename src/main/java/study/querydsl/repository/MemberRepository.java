@@ -3,8 +3,6 @@ package study.querydsl.repository;
 import org.springframework.data.jpa.repository.JpaRepository;
 import study.querydsl.entity.Member;
 
-import java.util.List;
-
+//findByUsername 은 MemberRepositoryCustom 에 있다 (UsernameLookupIndex 를 먼저 본다)
 public interface MemberRepository extends JpaRepository<Member, Long>, MemberRepositoryCustom {
-    List<Member> findByUsername(String username);
 }
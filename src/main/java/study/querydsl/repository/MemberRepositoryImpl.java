@@ -1,80 +1,158 @@
 package study.querydsl.repository;
 
-import com.querydsl.core.QueryResults;
 import com.querydsl.core.types.dsl.BooleanExpression;
 import com.querydsl.jpa.impl.JPAQuery;
 import com.querydsl.jpa.impl.JPAQueryFactory;
 import org.springframework.data.domain.Page;
-import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.support.PageableExecutionUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.util.StringUtils;
+import study.querydsl.dto.CursorSlice;
 import study.querydsl.dto.MemberSearchCondition;
 import study.querydsl.dto.MemberTeamDto;
 import study.querydsl.dto.QMemberTeamDto;
 import study.querydsl.entity.Member;
-
-import javax.persistence.EntityManager;
+import study.querydsl.repository.support.KeysetCursor;
+import study.querydsl.repository.support.MemberSearchQueryCache;
+import study.querydsl.repository.support.MemberSearchResultCache;
+import study.querydsl.repository.support.UsernameLookupIndex;
+import study.querydsl.repository.support.UsernameTrigramIndex;
+import study.querydsl.repository.support.ParallelQueryExecutor;
+import study.querydsl.repository.support.Querydsl4RepositorySupport;
+import study.querydsl.repository.support.ReadOnlyQueries;
+
+import java.util.ArrayList;
 import java.util.List;
 
 import static study.querydsl.entity.QMember.member;
 import static study.querydsl.entity.QTeam.team;
+import static study.querydsl.repository.support.ReadOnlyQueries.readOnly;
+
+/**
+ * 검색 메서드는 읽기 전용 트랜잭션으로 실행되어 replica 가 설정되어 있으면 replica 로 간다. (ReadWriteRoutingDataSource)
+ */
+public class MemberRepositoryImpl extends Querydsl4RepositorySupport implements MemberRepositoryCustom {
+
+    private final MemberSearchQueryCache searchQueryCache;
+    private final ParallelQueryExecutor parallelQueryExecutor;
+    private final UsernameTrigramIndex usernameTrigramIndex;
+    private final MemberSearchResultCache searchResultCache;
+    private final UsernameLookupIndex usernameLookupIndex;
+    private final TransactionTemplate readOnlyTx;
+
+    public MemberRepositoryImpl(MemberSearchQueryCache searchQueryCache, ParallelQueryExecutor parallelQueryExecutor,
+                                UsernameTrigramIndex usernameTrigramIndex, MemberSearchResultCache searchResultCache,
+                                UsernameLookupIndex usernameLookupIndex, PlatformTransactionManager transactionManager) {
+        super(Member.class);
+        this.readOnlyTx = new TransactionTemplate(transactionManager);
+        this.readOnlyTx.setReadOnly(true);
+        this.searchQueryCache = searchQueryCache;
+        this.parallelQueryExecutor = parallelQueryExecutor;
+        this.usernameTrigramIndex = usernameTrigramIndex;
+        this.searchResultCache = searchResultCache;
+        this.usernameLookupIndex = usernameLookupIndex;
+    }
 
-public class MemberRepositoryImpl implements MemberRepositoryCustom {
-    private final JPAQueryFactory queryFactory;
-
-    public MemberRepositoryImpl(EntityManager em) {
-        this.queryFactory = new JPAQueryFactory(em);
+    //없는 이름은 색인의 Bloom filter 에서 끝나고, 있는 이름은 PK 조회로 간다 (UsernameLookupIndex)
+    @Override
+    @Transactional(readOnly = true)
+    public List<Member> findByUsername(String username) {
+        List<Member> indexed = usernameLookupIndex.find(getEntityManager(), username);
+        if (indexed != null) {
+            return indexed;
+        }
+        return readOnly(selectFrom(member)
+                .where(member.username.eq(username)))
+                .fetch();
     }
 
     @Override
+    @Transactional(readOnly = true)
     public List<MemberTeamDto> search(MemberSearchCondition condition) {
-        return queryFactory
-                .select(new QMemberTeamDto(
-                        member.id.as("memberId"),
-                        member.username,
-                        member.age,
-                        team.id.as("teamId"),
-                        team.name.as("teamName")
-                ))
-                .from(member)
-                .leftJoin(member.team, team)
-                .where(usernameEq(condition.getUsername()),
-                        teamNameEq(condition.getTeamName()),
-                        ageGoe(condition.getAgeGoe()),
-                        ageLoe(condition.getAgeLoe()))
-                .fetch();
+        return searchResultCache.list(condition, () -> searchQueryCache.search(condition));
     }
 
     @Override
+    @Transactional(readOnly = true)
     public Page<MemberTeamDto> searchPageSimple(MemberSearchCondition condition, Pageable pageable) {
-        QueryResults<MemberTeamDto> results = queryFactory
-                .select(new QMemberTeamDto(
-                        member.id.as("memberId"),
-                        member.username,
-                        member.age,
-                        team.id.as("teamId"),
-                        team.name.as("teamName")
-                ))
-                .from(member)
-                .leftJoin(member.team, team)
-                .where(usernameEq(condition.getUsername()),
-                        teamNameEq(condition.getTeamName()),
-                        ageGoe(condition.getAgeGoe()),
-                        ageLoe(condition.getAgeLoe()))
-                .offset(pageable.getOffset())
-                .limit(pageable.getPageSize())
-                .fetchResults();                            //fetch가 아닌 results로 한다면 cnt쿼리까지 두개가 나가게 됨
+        return searchResultCache.page(condition, pageable, () -> searchPage(condition, pageable));
+    }
+
+    /**
+     * 병렬 실행은 작업 스레드마다 커넥션을 잡으므로 바깥 트랜잭션 없이 실행한다.
+     * 순차 실행은 다른 검색 메서드처럼 읽기 전용 트랜잭션(호출한 쪽 트랜잭션이 있으면 거기에 참여)에서 한다.
+     */
+    @Override
+    public Page<MemberTeamDto> searchPageComplex(MemberSearchCondition condition, Pageable pageable) {
+        return searchResultCache.page(condition, pageable, () -> {
+            if (pageable.isPaged() && parallelQueryExecutor.canRun()) {
+                return searchPageInParallel(condition, pageable);
+            }
+            return readOnlyTx.execute(status -> searchPage(condition, pageable));
+        });
+    }
 
-        List<MemberTeamDto> content = results.getResults();
-        long total = results.getTotal();
+    /**
+     * 정렬이 없으면 조건 모양별로 캐시해 둔 JPQL 로, 정렬이 있으면 Querydsl 로 Sort 를 OrderSpecifier 로 변환해 조회한다.
+     * 첫 페이지 content가 pageSize보다 작거나 마지막 페이지이면 count 쿼리를 생략한다
+     */
+    private Page<MemberTeamDto> searchPage(MemberSearchCondition condition, Pageable pageable) {
+        if (pageable.isPaged() && pageable.getSort().isUnsorted()) {
+            List<MemberTeamDto> content = searchQueryCache.searchPage(condition, pageable.getOffset(), pageable.getPageSize());
+            return PageableExecutionUtils.getPage(content, pageable, () -> searchQueryCache.count(condition));
+        }
+        return applyPagination(pageable,
+                queryFactory -> readOnly(contentQuery(queryFactory, condition), fetchSize(pageable)),
+                queryFactory -> readOnly(countQuery(queryFactory, condition)));
+    }
 
-        return new PageImpl<>(content, pageable, total);
+    /**
+     * content 와 count 를 별도 커넥션에서 동시에 실행한다. (querydsl.search.parallel.enabled, 트랜잭션 밖에서만)
+     */
+    private Page<MemberTeamDto> searchPageInParallel(MemberSearchCondition condition, Pageable pageable) {
+        if (pageable.getSort().isUnsorted()) {
+            return parallelQueryExecutor.page(pageable,
+                    () -> searchQueryCache.searchPage(condition, pageable.getOffset(), pageable.getPageSize()),
+                    () -> searchQueryCache.count(condition));
+        }
+        return parallelQueryExecutor.page(pageable,
+                () -> getQuerydsl().applyPagination(pageable,
+                        readOnly(contentQuery(getQueryFactory(), condition), fetchSize(pageable))).fetch(),
+                () -> readOnly(countQuery(getQueryFactory(), condition)).fetchOne());
     }
 
+    /**
+     * offset 대신 마지막으로 읽은 member.id 이후부터 읽는 키셋 페이징.
+     * 페이지가 아무리 깊어도 PK 인덱스로 바로 찾아가므로 앞 페이지를 버리는 비용이 없다.
+     */
     @Override
-    public Page<MemberTeamDto> searchPageComplex(MemberSearchCondition condition, Pageable pageable) {
-        List<MemberTeamDto> content = queryFactory
+    @Transactional(readOnly = true)
+    public CursorSlice<MemberTeamDto> searchSlice(MemberSearchCondition condition, String cursor, int size) {
+        List<MemberTeamDto> content = readOnly(contentQuery(getQueryFactory(), condition), size + 1)
+                .where(idGt(KeysetCursor.decode(cursor)))
+                .orderBy(member.id.asc())
+                .limit(size + 1)                            //한 건 더 읽어서 다음 페이지 존재 여부를 판단
+                .fetch();
+
+        boolean hasNext = content.size() > size;
+        if (hasNext) {
+            content = new ArrayList<>(content.subList(0, size));
+        }
+        String nextCursor = hasNext ? KeysetCursor.encode(content.get(content.size() - 1).getMemberId()) : null;
+
+        return new CursorSlice<>(content, nextCursor, hasNext);
+    }
+
+    //페이지 크기만큼만 받으면 되므로 fetch size 를 그 이상 잡지 않는다
+    private static int fetchSize(Pageable pageable) {
+        return pageable.isPaged() ? Math.min(pageable.getPageSize(), ReadOnlyQueries.FETCH_SIZE) : ReadOnlyQueries.FETCH_SIZE;
+    }
+
+    private JPAQuery<MemberTeamDto> contentQuery(JPAQueryFactory queryFactory, MemberSearchCondition condition) {
+        return queryFactory
                 .select(new QMemberTeamDto(
                         member.id.as("memberId"),
                         member.username,
@@ -86,26 +164,39 @@ public class MemberRepositoryImpl implements MemberRepositoryCustom {
                 .leftJoin(member.team, team)
                 .where(usernameEq(condition.getUsername()),
                         teamNameEq(condition.getTeamName()),
-        ageGoe(condition.getAgeGoe()),
-                ageLoe(condition.getAgeLoe()))
-                .offset(pageable.getOffset())
-                .limit(pageable.getPageSize())
-                .fetch();
-
-        JPAQuery<Member> countQuery = queryFactory
-                .select(member)
-                .from(member)
-                .leftJoin(member.team, team)
-                .where(
-                        usernameEq(condition.getUsername()),
-                        teamNameEq(condition.getTeamName()),
                         ageGoe(condition.getAgeGoe()),
-                        ageLoe(condition.getAgeLoe())
-                );
+                        ageLoe(condition.getAgeLoe()),
+                        usernamePrefix(condition.getUsernamePrefix()),
+                        usernameContains(condition.getUsernameContains()));
+    }
 
+    /**
+     * 페이징 count 쿼리.
+     * 엔티티 대신 count(member.id)만 조회하고, 팀 이름 조건이 없으면 team 조인을 생략한다.
+     * (left join 이므로 조인을 빼도 member 건수는 변하지 않는다)
+     * 팀 이름 조건이 있으면 team 이 없는 회원은 어차피 걸러지므로 inner join 으로 team.name 인덱스에서 출발하게 한다.
+     */
+    private JPAQuery<Long> countQuery(JPAQueryFactory queryFactory, MemberSearchCondition condition) {
+        JPAQuery<Long> query = queryFactory
+                .select(member.id.count())
+                .from(member);
+
+        BooleanExpression teamNameEq = teamNameEq(condition.getTeamName());
+        if (teamNameEq != null) {
+            query.join(member.team, team);
+        }
+
+        return query
+                .where(usernameEq(condition.getUsername()),
+                        teamNameEq,
+                        ageGoe(condition.getAgeGoe()),
+                        ageLoe(condition.getAgeLoe()),
+                        usernamePrefix(condition.getUsernamePrefix()),
+                        usernameContains(condition.getUsernameContains()));
+    }
 
-        return PageableExecutionUtils.getPage(content, pageable, () -> countQuery.fetchCount());
-//        return new PageImpl<>(content, pageable, total);
+    private BooleanExpression idGt(Long lastId) {
+        return lastId != null ? member.id.gt(lastId) : null;
     }
 
     private BooleanExpression usernameEq(String username) {
@@ -123,4 +214,18 @@ public class MemberRepositoryImpl implements MemberRepositoryCustom {
     private BooleanExpression ageLoe(Integer ageLoe) {
         return ageLoe != null ? member.age.loe(ageLoe) : null;
     }
+
+    private BooleanExpression usernamePrefix(String usernamePrefix) {
+        return StringUtils.hasText(usernamePrefix) ? member.username.startsWith(usernamePrefix) : null;
+    }
+
+    //trigram 색인이 좁힌 후보 안에서만 like 로 확인한다. 색인을 쓸 수 없으면 like '%x%' 그대로
+    private BooleanExpression usernameContains(String usernameContains) {
+        if (!StringUtils.hasText(usernameContains)) {
+            return null;
+        }
+        BooleanExpression contains = member.username.contains(usernameContains);
+        List<Long> candidates = usernameTrigramIndex.lookup(usernameContains);
+        return candidates != null ? member.id.in(candidates).and(contains) : contains;
+    }
 }
@@ -0,0 +1,12 @@
+package study.querydsl.repository;
+
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import study.querydsl.dto.TeamMembersDto;
+import study.querydsl.dto.TeamStatsDto;
+
+public interface TeamRepositoryCustom {
+    Page<TeamMembersDto> findTeamsWithMembers(Pageable pageable, int memberLimit);
+
+    Page<TeamStatsDto> findTeamStats(Pageable pageable);
+}
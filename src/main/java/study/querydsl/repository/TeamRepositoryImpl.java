@@ -0,0 +1,117 @@
+package study.querydsl.repository;
+
+import com.querydsl.core.Tuple;
+import com.querydsl.core.types.dsl.NumberExpression;
+import com.querydsl.jpa.impl.JPAQuery;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.transaction.annotation.Transactional;
+import study.querydsl.dto.MemberTeamDto;
+import study.querydsl.dto.QTeamMembersDto;
+import study.querydsl.dto.QTeamStatsDto;
+import study.querydsl.dto.TeamMembersDto;
+import study.querydsl.dto.TeamStatsDto;
+import study.querydsl.entity.Team;
+import study.querydsl.repository.support.Querydsl4RepositorySupport;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static study.querydsl.entity.QMember.member;
+import static study.querydsl.entity.QTeam.team;
+import static study.querydsl.entity.QTeamStats.teamStats;
+
+public class TeamRepositoryImpl extends Querydsl4RepositorySupport implements TeamRepositoryCustom {
+
+    //팀마다 member_id 순서로 앞의 :memberLimit 건만 남긴다. (team_id, age, username) 인덱스만 읽고 나머지 행은 보내지 않는다
+    private static final String FIRST_MEMBERS_OF_TEAMS = "select m.member_id, m.username, m.age, m.team_id from ("
+            + " select member_id, username, age, team_id,"
+            + " row_number() over (partition by team_id order by member_id) as rn"
+            + " from member where team_id in (:teamIds)) m"
+            + " where m.rn <= :memberLimit"
+            + " order by m.team_id, m.member_id";
+
+    public TeamRepositoryImpl() {
+        super(Team.class);
+    }
+
+    /**
+     * 1. 팀 한 페이지를 조회하고
+     * 2. 그 팀들의 회원 수를 team_id in (...) group by 쿼리 한 번으로 세고
+     * 3. 팀마다 앞의 memberLimit 명을 row_number() 로 잘라 쿼리 한 번으로 가져온다. (팀 수 만큼 쿼리가 나가지 않는다)
+     * in 절 파라미터 수는 hibernate.query.in_clause_parameter_padding 으로 2의 거듭제곱에 맞춰져 실행 계획 캐시가 작게 유지된다.
+     * 가져오는 행은 팀 수 x memberLimit 을 넘지 않으므로 회원이 수만 명인 팀이 있어도 전송량과 메모리가 일정하다.
+     */
+    @Override
+    @Transactional(readOnly = true)
+    public Page<TeamMembersDto> findTeamsWithMembers(Pageable pageable, int memberLimit) {
+        Page<TeamMembersDto> page = applyPagination(pageable,
+                queryFactory -> {
+                    JPAQuery<TeamMembersDto> query = queryFactory
+                            .select(new QTeamMembersDto(team.id, team.name))
+                            .from(team);
+                    return pageable.getSort().isUnsorted() ? query.orderBy(team.id.asc()) : query;
+                },
+                queryFactory -> queryFactory
+                        .select(team.count())
+                        .from(team));
+
+        Map<Long, TeamMembersDto> teams = new LinkedHashMap<>();
+        page.getContent().forEach(dto -> teams.put(dto.getTeamId(), dto));
+        if (teams.isEmpty()) {
+            return page;
+        }
+
+        NumberExpression<Long> memberCount = member.count();
+        List<Tuple> counts = getQueryFactory()
+                .select(member.team.id, memberCount)
+                .from(member)
+                .where(member.team.id.in(teams.keySet()))
+                .groupBy(member.team.id)
+                .fetch();
+        for (Tuple count : counts) {
+            teams.get(count.get(member.team.id)).setMemberCount(count.get(memberCount));
+        }
+
+        if (memberLimit > 0) {
+            @SuppressWarnings("unchecked")
+            List<Object[]> rows = getEntityManager()
+                    .createNativeQuery(FIRST_MEMBERS_OF_TEAMS)
+                    .setParameter("teamIds", teams.keySet())
+                    .setParameter("memberLimit", memberLimit)
+                    .getResultList();
+            for (Object[] row : rows) {
+                TeamMembersDto dto = teams.get(((Number) row[3]).longValue());
+                dto.getMembers().add(new MemberTeamDto(((Number) row[0]).longValue(), (String) row[1],
+                        ((Number) row[2]).intValue(), dto.getTeamId(), dto.getTeamName()));
+            }
+        }
+        return page;
+    }
+
+    /**
+     * 팀별 나이 집계를 team_stats 에서 읽는다. 회원을 스캔하지 않으므로 비용은 팀 수에 비례한다.
+     */
+    @Override
+    @Transactional(readOnly = true)
+    public Page<TeamStatsDto> findTeamStats(Pageable pageable) {
+        return applyPagination(pageable,
+                queryFactory -> {
+                    JPAQuery<TeamStatsDto> query = queryFactory
+                            .select(new QTeamStatsDto(
+                                    team.id,
+                                    team.name,
+                                    teamStats.memberCount,
+                                    teamStats.ageSum,
+                                    teamStats.ageMin,
+                                    teamStats.ageMax))
+                            .from(team)
+                            .leftJoin(teamStats).on(teamStats.teamId.eq(team.id));
+                    return pageable.getSort().isUnsorted() ? query.orderBy(team.id.asc()) : query;
+                },
+                queryFactory -> queryFactory
+                        .select(team.count())
+                        .from(team));
+    }
+}
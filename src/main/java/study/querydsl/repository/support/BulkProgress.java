@@ -0,0 +1,24 @@
+package study.querydsl.repository.support;
+
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * 청크 단위 벌크 작업 진행 상황. 청크 하나가 커밋될 때마다 넘어온다.
+ */
+@Getter
+@ToString
+public class BulkProgress {
+
+    private final int chunks;           //커밋한 청크 수
+    private final long affected;        //지금까지 바뀐 행 수
+    private final long lastId;          //마지막으로 처리한 member.id (startAfterId 로 넘기면 그 다음부터 이어서 실행한다)
+    private final long elapsedMillis;
+
+    public BulkProgress(int chunks, long affected, long lastId, long elapsedMillis) {
+        this.chunks = chunks;
+        this.affected = affected;
+        this.lastId = lastId;
+        this.elapsedMillis = elapsedMillis;
+    }
+}
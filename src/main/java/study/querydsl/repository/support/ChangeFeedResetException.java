@@ -0,0 +1,18 @@
+package study.querydsl.repository.support;
+
+import lombok.Getter;
+
+/**
+ * 토큰 이후에 변경 기록 없이 바뀐 데이터가 있다. (ChangeLogWriter.writeReset)
+ * 이어서 읽을 수 없으므로 /members/changes/head 토큰을 받고 전체를 다시 받아야 한다.
+ */
+@Getter
+public class ChangeFeedResetException extends RuntimeException {
+
+    private final long resetId;
+
+    public ChangeFeedResetException(long resetId) {
+        super("change feed was reset at " + resetId + ", resync from the current head");
+        this.resetId = resetId;
+    }
+}
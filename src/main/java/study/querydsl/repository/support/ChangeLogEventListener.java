@@ -0,0 +1,85 @@
+package study.querydsl.repository.support;
+
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.event.spi.EventSource;
+import org.hibernate.event.spi.PostDeleteEvent;
+import org.hibernate.event.spi.PostDeleteEventListener;
+import org.hibernate.event.spi.PostInsertEvent;
+import org.hibernate.event.spi.PostInsertEventListener;
+import org.hibernate.event.spi.PostUpdateEvent;
+import org.hibernate.event.spi.PostUpdateEventListener;
+import org.hibernate.persister.entity.EntityPersister;
+import study.querydsl.entity.ChangeLog;
+import study.querydsl.entity.Member;
+import study.querydsl.entity.Team;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Member / Team 의 insert / update / delete 를 모았다가 커밋 직전 같은 트랜잭션에서 change_log 에 쓴다.
+ * 롤백되면 기록도 같이 사라진다.
+ *
+ * 대량 적재처럼 변경마다 기록할 필요가 없는 트랜잭션은 em.setProperty(SKIP, true) 로 끈다.
+ * 그 트랜잭션의 변경은 피드에 나오지 않으므로 끝난 뒤 ChangeLogWriter.writeReset 을 남겨야 한다.
+ * (따라가던 쪽은 리셋 표시에서 410 을 받고 전체를 다시 받는다)
+ */
+public class ChangeLogEventListener
+        implements PostInsertEventListener, PostUpdateEventListener, PostDeleteEventListener {
+
+    public static final String SKIP = "querydsl.change-log.skip";
+
+    private final Map<SharedSessionContractImplementor, List<ChangeLogWriter.Change>> pending = new ConcurrentHashMap<>();
+
+    @Override
+    public void onPostInsert(PostInsertEvent event) {
+        record(event.getSession(), event.getEntity(), event.getId(), ChangeLog.Operation.INSERT);
+    }
+
+    @Override
+    public void onPostUpdate(PostUpdateEvent event) {
+        record(event.getSession(), event.getEntity(), event.getId(), ChangeLog.Operation.UPDATE);
+    }
+
+    @Override
+    public void onPostDelete(PostDeleteEvent event) {
+        record(event.getSession(), event.getEntity(), event.getId(), ChangeLog.Operation.DELETE);
+    }
+
+    @Override
+    public boolean requiresPostCommitHanding(EntityPersister persister) {
+        return false;
+    }
+
+    private void record(EventSource session, Object entity, Object id, ChangeLog.Operation operation) {
+        ChangeLog.EntityType type = typeOf(entity);
+        if (type != null && !Boolean.TRUE.equals(session.getProperties().get(SKIP))) {
+            changesOf(session).add(new ChangeLogWriter.Change(type, (Long) id, operation));
+        }
+    }
+
+    private List<ChangeLogWriter.Change> changesOf(EventSource session) {
+        return pending.computeIfAbsent(session, key -> {
+            session.getActionQueue().registerProcess(beforeCompletion -> {
+                List<ChangeLogWriter.Change> changes = pending.remove(session);
+                if (changes != null) {
+                    ChangeLogWriter.write(session, changes);
+                }
+            });
+            session.getActionQueue().registerProcess((success, afterCompletion) -> pending.remove(session));
+            return new ArrayList<>();
+        });
+    }
+
+    private static ChangeLog.EntityType typeOf(Object entity) {
+        if (entity instanceof Member) {
+            return ChangeLog.EntityType.MEMBER;
+        }
+        if (entity instanceof Team) {
+            return ChangeLog.EntityType.TEAM;
+        }
+        return null;
+    }
+}
@@ -0,0 +1,93 @@
+package study.querydsl.repository.support;
+
+import lombok.Getter;
+import org.hibernate.engine.spi.SessionImplementor;
+import study.querydsl.entity.ChangeLog;
+
+import javax.persistence.EntityManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * change_log 쓰기. 현재 트랜잭션의 커넥션으로 JDBC 배치 insert 한다.
+ * (엔티티로 persist 하면 커밋 직전 flush 가 끝난 뒤라 반영되지 않는다)
+ * changed_at(localtimestamp)은 트랜잭션 시작 시각이다. 읽는 순서는 id 로만 정한다. (ChangeLogRepository)
+ *
+ * 쓰는 트랜잭션은 끝날 때까지(커밋/롤백) 이 JVM 의 진행 중 목록에 "id 를 받기 전 보인 최대 id" 를 남긴다.
+ * 그 값들의 최솟값(inFlightFloor) 이하의 빈 id 는 이미 끝난 트랜잭션의 것이므로, 아직 안 보이면 롤백된 것이다.
+ */
+public final class ChangeLogWriter {
+
+    private static final String MAX_ID = "select coalesce(max(id), 0) from change_log";
+    private static final String INSERT = "insert into change_log (id, entity_type, entity_id, operation, changed_at)"
+            + " values (next value for change_log_seq, ?, ?, ?, localtimestamp)";
+
+    //쓰는 중인 트랜잭션 -> 그 트랜잭션이 받는 id 보다 작은 값
+    private static final Map<Object, Long> IN_FLIGHT = new ConcurrentHashMap<>();
+
+    private ChangeLogWriter() {
+    }
+
+    public static void write(EntityManager em, Collection<Change> changes) {
+        if (changes.isEmpty()) {
+            return;
+        }
+        SessionImplementor session = em.unwrap(SessionImplementor.class);
+        Object writer = new Object();
+        IN_FLIGHT.put(writer, 0L);                          //기준값을 읽기 전까지는 모든 빈 id 를 기다리게 한다
+        session.getActionQueue().registerProcess((success, completed) -> IN_FLIGHT.remove(writer));
+        session.doWork(connection -> {
+            try (PreparedStatement maxId = connection.prepareStatement(MAX_ID);
+                 ResultSet result = maxId.executeQuery()) {
+                result.next();
+                IN_FLIGHT.put(writer, result.getLong(1));
+            }
+            try (PreparedStatement statement = connection.prepareStatement(INSERT)) {
+                for (Change change : changes) {
+                    statement.setString(1, change.getEntityType().name());
+                    statement.setLong(2, change.getEntityId());
+                    statement.setString(3, change.getOperation().name());
+                    statement.addBatch();
+                }
+                statement.executeBatch();
+            }
+        });
+    }
+
+    /**
+     * @return 이 JVM 에서 쓰는 중인 트랜잭션이 받았거나 받을 id 의 하한 (없으면 Long.MAX_VALUE)
+     * 이 값을 읽기 전에 change_log 의 최대 id 를 먼저 읽어 두어야 한다. 그래야 그 사이 시작한 트랜잭션의 id 를 판단하지 않는다.
+     */
+    public static long inFlightFloor() {
+        long floor = Long.MAX_VALUE;
+        for (Long value : IN_FLIGHT.values()) {
+            floor = Math.min(floor, value);
+        }
+        return floor;
+    }
+
+    /**
+     * 변경 기록을 끄고(ChangeLogEventListener.SKIP) 데이터를 바꾼 뒤에 남긴다.
+     * 이 표시 앞의 토큰으로 읽던 쪽은 ChangeFeedResetException(410) 을 받고 전체를 다시 받는다.
+     */
+    public static void writeReset(EntityManager em) {
+        write(em, List.of(new Change(ChangeLog.EntityType.MEMBER, 0, ChangeLog.Operation.RESET)));
+    }
+
+    @Getter
+    public static class Change {
+        private final ChangeLog.EntityType entityType;
+        private final long entityId;
+        private final ChangeLog.Operation operation;
+
+        public Change(ChangeLog.EntityType entityType, long entityId, ChangeLog.Operation operation) {
+            this.entityType = entityType;
+            this.entityId = entityId;
+            this.operation = operation;
+        }
+    }
+}
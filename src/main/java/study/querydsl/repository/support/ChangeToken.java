@@ -0,0 +1,56 @@
+package study.querydsl.repository.support;
+
+import lombok.Getter;
+import org.springframework.util.StringUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * 변경 피드 토큰. 클라이언트에는 불투명한 문자열만 노출한다.
+ * - lastId : 여기까지 빠짐없이 읽은 change_log.id
+ * - gapSeenAt : lastId 다음 id 가 비어 있는 것을 처음 본 시각 (읽는 쪽 시계, epoch millis), 없으면 0
+ */
+@Getter
+public final class ChangeToken {
+
+    private static final String PREFIX = "c:";
+    private static final String GAP_SEPARATOR = "@";
+
+    private final long lastId;
+    private final long gapSeenAt;
+
+    public ChangeToken(long lastId, long gapSeenAt) {
+        this.lastId = lastId;
+        this.gapSeenAt = gapSeenAt;
+    }
+
+    public String encode() {
+        String raw = PREFIX + lastId + (gapSeenAt != 0 ? GAP_SEPARATOR + gapSeenAt : "");
+        return Base64.getUrlEncoder().withoutPadding()
+                .encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @return 토큰이 비어 있으면 처음부터 (lastId 0)
+     */
+    public static ChangeToken decode(String token) {
+        if (!StringUtils.hasText(token)) {
+            return new ChangeToken(0, 0);
+        }
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+            if (!raw.startsWith(PREFIX)) {
+                throw new IllegalArgumentException("invalid change token: " + token);
+            }
+            String body = raw.substring(PREFIX.length());
+            int gap = body.indexOf(GAP_SEPARATOR);
+            if (gap < 0) {
+                return new ChangeToken(Long.parseLong(body), 0);
+            }
+            return new ChangeToken(Long.parseLong(body.substring(0, gap)), Long.parseLong(body.substring(gap + 1)));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("invalid change token: " + token, e);
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package study.querydsl.repository.support;
+
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * 변경 전/후 회원 한 행의 검색에 쓰이는 값. teamName 은 모르면 null
+ */
+@Getter
+@ToString
+public class MemberRow {
+
+    private final String username;
+    private final int age;
+    private final Long teamId;
+    private final String teamName;
+
+    public MemberRow(String username, int age, Long teamId, String teamName) {
+        this.username = username;
+        this.age = age;
+        this.teamId = teamId;
+        this.teamName = teamName;
+    }
+}
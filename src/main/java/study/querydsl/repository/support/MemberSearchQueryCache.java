@@ -0,0 +1,304 @@
+package study.querydsl.repository.support;
+
+import lombok.Getter;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+import study.querydsl.dto.MemberSearchCondition;
+import study.querydsl.dto.MemberTeamDto;
+
+import javax.persistence.EntityManager;
+import javax.persistence.TypedQuery;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import static study.querydsl.repository.support.ReadOnlyQueries.readOnly;
+
+/**
+ * MemberSearchCondition 의 조건 모양(각 필드가 있는지 없는지)별로 JPQL 을 한 번만 만들어 두고 재사용한다.
+ * 조건 필드가 6개이므로 모양은 64가지뿐이다.
+ * usernameContains 는 trigram 색인이 좁힌 후보 id 안에서만 like 로 확인한다.
+ * 색인을 쓸 수 없을 때는 후보 조건을 뺀 JPQL(like '%x%' 스캔)을 캐시하지 않고 그때그때 만든다.
+ * 요청마다 Querydsl 식 트리 생성 / JPQL 직렬화를 하지 않고 파라미터만 바인딩하며,
+ * JPQL 문자열이 항상 같으므로 하이버네이트 QueryPlanCache 도 항상 적중한다.
+ */
+@Component
+public class MemberSearchQueryCache {
+
+    public static final int USERNAME = 1;
+    public static final int TEAM_NAME = 1 << 1;
+    public static final int AGE_GOE = 1 << 2;
+    public static final int AGE_LOE = 1 << 3;
+    public static final int USERNAME_PREFIX = 1 << 4;
+    public static final int USERNAME_CONTAINS = 1 << 5;
+    public static final int SHAPE_COUNT = 1 << 6;
+
+    private static final char LIKE_ESCAPE = '!';
+
+    private final EntityManager em;
+    private final UsernameTrigramIndex usernameIndex;
+    private final AtomicReferenceArray<CompiledSearch> compiled = new AtomicReferenceArray<>(SHAPE_COUNT);
+    private final AtomicLong[] hits = newCounters();
+    private final AtomicLong[] misses = newCounters();
+
+    public MemberSearchQueryCache(EntityManager em, UsernameTrigramIndex usernameIndex) {
+        this.em = em;
+        this.usernameIndex = usernameIndex;
+    }
+
+    public static int shapeOf(MemberSearchCondition condition) {
+        int shape = 0;
+        if (StringUtils.hasText(condition.getUsername())) {
+            shape |= USERNAME;
+        }
+        if (StringUtils.hasText(condition.getTeamName())) {
+            shape |= TEAM_NAME;
+        }
+        if (condition.getAgeGoe() != null) {
+            shape |= AGE_GOE;
+        }
+        if (condition.getAgeLoe() != null) {
+            shape |= AGE_LOE;
+        }
+        if (StringUtils.hasText(condition.getUsernamePrefix())) {
+            shape |= USERNAME_PREFIX;
+        }
+        if (StringUtils.hasText(condition.getUsernameContains())) {
+            shape |= USERNAME_CONTAINS;
+        }
+        return shape;
+    }
+
+    /**
+     * 메트릭 태그 등에 쓰는 사람이 읽을 수 있는 모양 이름. 예) "teamName+ageGoe", 조건이 없으면 "none"
+     */
+    public static String describe(int shape) {
+        List<String> names = new ArrayList<>();
+        if ((shape & USERNAME) != 0) {
+            names.add("username");
+        }
+        if ((shape & TEAM_NAME) != 0) {
+            names.add("teamName");
+        }
+        if ((shape & AGE_GOE) != 0) {
+            names.add("ageGoe");
+        }
+        if ((shape & AGE_LOE) != 0) {
+            names.add("ageLoe");
+        }
+        if ((shape & USERNAME_PREFIX) != 0) {
+            names.add("usernamePrefix");
+        }
+        if ((shape & USERNAME_CONTAINS) != 0) {
+            names.add("usernameContains");
+        }
+        return names.isEmpty() ? "none" : String.join("+", names);
+    }
+
+    public List<MemberTeamDto> search(MemberSearchCondition condition) {
+        int shape = shapeOf(condition);
+        List<Long> candidates = usernameCandidates(shape, condition);
+        if (candidates != null && candidates.isEmpty()) {
+            return new ArrayList<>();
+        }
+        TypedQuery<MemberTeamDto> query = em.createQuery(contentJpqlFor(shape, candidates), MemberTeamDto.class);
+        return bind(readOnly(query), shape, condition, candidates).getResultList();
+    }
+
+    public List<MemberTeamDto> searchPage(MemberSearchCondition condition, long offset, int limit) {
+        int shape = shapeOf(condition);
+        List<Long> candidates = usernameCandidates(shape, condition);
+        if (candidates != null && candidates.isEmpty()) {
+            return new ArrayList<>();
+        }
+        TypedQuery<MemberTeamDto> query = em.createQuery(contentJpqlFor(shape, candidates), MemberTeamDto.class);
+        return bind(readOnly(query, Math.min(limit, ReadOnlyQueries.FETCH_SIZE)), shape, condition, candidates)
+                .setFirstResult(Math.toIntExact(offset))
+                .setMaxResults(limit)
+                .getResultList();
+    }
+
+    public long count(MemberSearchCondition condition) {
+        int shape = shapeOf(condition);
+        List<Long> candidates = usernameCandidates(shape, condition);
+        if (candidates != null && candidates.isEmpty()) {
+            return 0;
+        }
+        String jpql = usesIndex(shape, candidates) ? get(shape).getCountJpql() : countJpql(shape, false);
+        TypedQuery<Long> query = em.createQuery(jpql, Long.class);
+        return bind(readOnly(query), shape, condition, candidates).getSingleResult();
+    }
+
+    /**
+     * usernameContains 조건이 있으면 trigram 색인에서 후보 id 를 찾는다. 색인을 쓸 수 없으면 null
+     */
+    private List<Long> usernameCandidates(int shape, MemberSearchCondition condition) {
+        return (shape & USERNAME_CONTAINS) != 0 ? usernameIndex.lookup(condition.getUsernameContains()) : null;
+    }
+
+    private String contentJpqlFor(int shape, List<Long> candidates) {
+        return usesIndex(shape, candidates) ? get(shape).getContentJpql() : contentJpql(shape, false);
+    }
+
+    private static boolean usesIndex(int shape, List<Long> candidates) {
+        return (shape & USERNAME_CONTAINS) == 0 || candidates != null;
+    }
+
+    private CompiledSearch get(int shape) {
+        CompiledSearch search = compiled.get(shape);
+        if (search != null) {
+            hits[shape].incrementAndGet();
+            return search;
+        }
+        misses[shape].incrementAndGet();
+        //동시에 처음 들어온 요청이 같이 만들어도 결과가 같으므로 먼저 넣은 쪽을 쓴다
+        compiled.compareAndSet(shape, null, compile(shape));
+        return compiled.get(shape);
+    }
+
+    private static <T> TypedQuery<T> bind(TypedQuery<T> query, int shape, MemberSearchCondition condition, List<Long> candidates) {
+        if ((shape & USERNAME) != 0) {
+            query.setParameter("username", condition.getUsername());
+        }
+        if ((shape & TEAM_NAME) != 0) {
+            query.setParameter("teamName", condition.getTeamName());
+        }
+        if ((shape & AGE_GOE) != 0) {
+            query.setParameter("ageGoe", condition.getAgeGoe());
+        }
+        if ((shape & AGE_LOE) != 0) {
+            query.setParameter("ageLoe", condition.getAgeLoe());
+        }
+        if ((shape & USERNAME_PREFIX) != 0) {
+            query.setParameter("usernamePrefix", escapeLike(condition.getUsernamePrefix()) + "%");
+        }
+        if (candidates != null) {
+            query.setParameter("usernameCandidates", candidates);
+        }
+        if ((shape & USERNAME_CONTAINS) != 0) {
+            query.setParameter("usernameContains", "%" + escapeLike(condition.getUsernameContains()) + "%");
+        }
+        return query;
+    }
+
+    private static CompiledSearch compile(int shape) {
+        return new CompiledSearch(contentJpql(shape), countJpql(shape));
+    }
+
+    public static String contentJpql(int shape) {
+        return contentJpql(shape, true);
+    }
+
+    public static String countJpql(int shape) {
+        return countJpql(shape, true);
+    }
+
+    private static String contentJpql(int shape, boolean indexed) {
+        return "select new study.querydsl.dto.MemberTeamDto(m.id, m.username, m.age, t.id, t.name)"
+                + " from Member m " + teamJoin(shape) + where(shape, indexed);
+    }
+
+    //count 는 팀 이름 조건이 있을 때만 team 을 조인한다
+    private static String countJpql(int shape, boolean indexed) {
+        return "select count(m.id) from Member m"
+                + ((shape & TEAM_NAME) != 0 ? " " + teamJoin(shape) : "") + where(shape, indexed);
+    }
+
+    /**
+     * 팀 이름 조건이 있으면 team 이 null 인 회원은 어차피 걸러지므로 inner join 으로 바꾼다.
+     * left join 이면 DB 가 member 부터 읽어야 하지만, inner join 이면 team.name 인덱스에서 출발할 수 있다.
+     */
+    private static String teamJoin(int shape) {
+        return (shape & TEAM_NAME) != 0 ? "join m.team t" : "left join m.team t";
+    }
+
+    private static String where(int shape, boolean indexed) {
+        List<String> predicates = new ArrayList<>();
+        if ((shape & USERNAME) != 0) {
+            predicates.add("m.username = :username");
+        }
+        if ((shape & TEAM_NAME) != 0) {
+            predicates.add("t.name = :teamName");
+        }
+        if ((shape & AGE_GOE) != 0) {
+            predicates.add("m.age >= :ageGoe");
+        }
+        if ((shape & AGE_LOE) != 0) {
+            predicates.add("m.age <= :ageLoe");
+        }
+        if ((shape & USERNAME_PREFIX) != 0) {
+            predicates.add("m.username like :usernamePrefix escape '" + LIKE_ESCAPE + "'");
+        }
+        if ((shape & USERNAME_CONTAINS) != 0) {
+            if (indexed) {
+                predicates.add("m.id in :usernameCandidates");
+            }
+            predicates.add("m.username like :usernameContains escape '" + LIKE_ESCAPE + "'");
+        }
+        return predicates.isEmpty() ? "" : " where " + String.join(" and ", predicates);
+    }
+
+    //Querydsl 의 startsWith / contains 와 같은 방식으로 like 특수문자를 '!' 로 이스케이프한다
+    private static String escapeLike(String value) {
+        StringBuilder escaped = new StringBuilder(value.length() + 4);
+        for (char c : value.toCharArray()) {
+            if (c == '%' || c == '_' || c == LIKE_ESCAPE) {
+                escaped.append(LIKE_ESCAPE);
+            }
+            escaped.append(c);
+        }
+        return escaped.toString();
+    }
+
+    /**
+     * 모양별 적중 통계. 적중 한 번에 아끼는 Querydsl 생성/직렬화 비용은 여기서 재지 않는다.
+     * (처음 한 번 잰 값은 클래스 로딩 / JIT 전 시간이라 크게 부풀려진다. 비용은 JMH 벤치마크로 본다)
+     */
+    public Map<String, ShapeStats> stats() {
+        Map<String, ShapeStats> result = new LinkedHashMap<>();
+        for (int shape = 0; shape < SHAPE_COUNT; shape++) {
+            long hit = hits[shape].get();
+            long miss = misses[shape].get();
+            if (hit + miss == 0) {
+                continue;
+            }
+            result.put(describe(shape), new ShapeStats(hit, miss));
+        }
+        return result;
+    }
+
+    private static AtomicLong[] newCounters() {
+        AtomicLong[] counters = new AtomicLong[SHAPE_COUNT];
+        for (int i = 0; i < SHAPE_COUNT; i++) {
+            counters[i] = new AtomicLong();
+        }
+        return counters;
+    }
+
+    @Getter
+    private static class CompiledSearch {
+        private final String contentJpql;
+        private final String countJpql;
+
+        CompiledSearch(String contentJpql, String countJpql) {
+            this.contentJpql = contentJpql;
+            this.countJpql = countJpql;
+        }
+    }
+
+    @Getter
+    public static class ShapeStats {
+        private final long hits;
+        private final long misses;
+        private final double hitRatio;
+
+        ShapeStats(long hits, long misses) {
+            this.hits = hits;
+            this.misses = misses;
+            this.hitRatio = (double) hits / (hits + misses);
+        }
+    }
+}
@@ -0,0 +1,193 @@
+package study.querydsl.repository.support;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.Getter;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Pageable;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import study.querydsl.config.ReplicaLagMonitor;
+import study.querydsl.dto.MemberSearchCondition;
+import study.querydsl.dto.MemberTeamDto;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/**
+ * 회원 검색 결과 캐시. 키는 정규화한 조건 + 페이지(SearchKey)
+ * Caffeine(W-TinyLFU) 이라 자주 쓰이는 조건이 남고, 결과 크기를 추정한 무게 합계로 메모리를 제한한다.
+ *
+ * Member / Team 이 커밋되면 SearchResultCacheEventListener 가 트랜잭션마다 한 번, 바뀐 행에 걸리는 조건의 항목만 지운다.
+ * 읽는 동안 무효화가 있었으면 읽은 결과는 넣지 않는다. (무효화 전에 읽은 값이 무효화 뒤에 들어가는 것을 막는다)
+ * 커밋 전 데이터가 섞이지 않도록 읽기/쓰기 트랜잭션 안에서는 캐시를 거치지 않는다.
+ *
+ * 무효화는 이 JVM 의 커밋 이벤트로만 일어난다. 다른 노드나 네이티브 SQL 로 바뀐 회원은 TTL 이 지날 때까지 옛 결과가 나가므로
+ * querydsl.username-index.single-writer 가 true 일 때만 캐시를 쓴다.
+ * replica 로 갔을 수 있는 읽기(replica 사용 가능 상태에서 읽은 결과)는 넣지 않는다. 무효화 직후 뒤처진 replica 에서 읽은
+ * 옛 페이지가 TTL 동안 남기 때문이다.
+ */
+@Component
+public class MemberSearchResultCache {
+
+    private static final int ENTRY_OVERHEAD_BYTES = 128;
+    private static final int ROW_OVERHEAD_BYTES = 96;
+
+    private final Cache<SearchKey, Object> cache;
+    private final boolean enabled;
+    private final BooleanSupplier replicaRouting;
+    private final AtomicLong generation = new AtomicLong();
+    private final Counter invalidations;
+
+    @Autowired
+    public MemberSearchResultCache(SearchResultCacheProperties properties, MeterRegistry meterRegistry,
+                                   @Value("${querydsl.username-index.single-writer:false}") boolean singleWriter,
+                                   ObjectProvider<ReplicaLagMonitor> replicaLagMonitor) {
+        this(properties, meterRegistry, singleWriter, replicaRouting(replicaLagMonitor.getIfAvailable()));
+    }
+
+    /**
+     * @param replicaRouting 지금 읽기 전용 트랜잭션이 replica 로 갈 수 있으면 true
+     */
+    MemberSearchResultCache(SearchResultCacheProperties properties, MeterRegistry meterRegistry,
+                            boolean singleWriter, BooleanSupplier replicaRouting) {
+        this.enabled = properties.isEnabled() && singleWriter;
+        this.replicaRouting = replicaRouting;
+        this.cache = Caffeine.newBuilder()
+                .maximumWeight(properties.getMaximumWeight().toBytes())
+                .weigher((SearchKey key, Object value) -> weigh(value))
+                .expireAfterWrite(properties.getTimeToLive())
+                .recordStats()
+                .build();
+        //cache.gets{result=hit|miss}, cache.evictions ... 으로 적중률을 본다
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "member.search.results");
+        this.invalidations = Counter.builder("member.search.results.invalidations").register(meterRegistry);
+    }
+
+    @SuppressWarnings("unchecked")
+    public List<MemberTeamDto> list(MemberSearchCondition condition, Supplier<List<MemberTeamDto>> loader) {
+        return (List<MemberTeamDto>) get(SearchKey.list(condition),
+                () -> Collections.unmodifiableList(loader.get()));
+    }
+
+    public Page<MemberTeamDto> page(MemberSearchCondition condition, Pageable pageable,
+                                    Supplier<Page<MemberTeamDto>> loader) {
+        CachedPage cached = (CachedPage) get(SearchKey.page(condition, pageable), () -> {
+            Page<MemberTeamDto> page = loader.get();
+            return new CachedPage(Collections.unmodifiableList(page.getContent()), page.getTotalElements());
+        });
+        return new PageImpl<>(cached.getContent(), pageable, cached.getTotal());
+    }
+
+    private Object get(SearchKey key, Supplier<Object> loader) {
+        if (!usable()) {
+            return loader.get();
+        }
+        Object cached = cache.getIfPresent(key);
+        if (cached != null) {
+            return cached;
+        }
+        long readGeneration = generation.get();
+        boolean replicaBefore = replicaRouting.getAsBoolean();
+        Object loaded = loader.get();
+        if (replicaBefore || replicaRouting.getAsBoolean()) {
+            return loaded;                                  //replica 에서 읽었을 수 있다
+        }
+        cache.put(key, loaded);
+        if (generation.get() != readGeneration) {
+            cache.invalidate(key);
+        }
+        return loaded;
+    }
+
+    //replica 가 없으면 모든 읽기가 primary 로 간다
+    private static BooleanSupplier replicaRouting(ReplicaLagMonitor replicaLagMonitor) {
+        return replicaLagMonitor != null ? replicaLagMonitor : () -> false;
+    }
+
+    private boolean usable() {
+        return enabled && (!TransactionSynchronizationManager.isActualTransactionActive()
+                || TransactionSynchronizationManager.isCurrentTransactionReadOnly());
+    }
+
+    /**
+     * 커밋된 회원 변경 하나. 변경 전/후 행 중 하나라도 조건에 걸리면 그 조건의 모든 페이지를 지운다. (페이지 경계가 밀린다)
+     */
+    public void memberChanged(MemberRow before, MemberRow after) {
+        SearchResultChanges changes = new SearchResultChanges();
+        changes.member(before, after);
+        changed(changes);
+    }
+
+    /**
+     * 한 트랜잭션에서 커밋된 변경을 한 번에 반영한다. 키 전체를 한 번만 훑는다.
+     * - 회원 행 : 변경 전/후 행 중 하나라도 조건에 걸리는 항목
+     * - 팀 이름 변경 / 삭제 : 그 팀 이름을 조건으로 쓰는 항목과, 팀 이름 조건이 없어 결과에 그 팀 회원이 섞일 수 있는 항목
+     */
+    public void changed(SearchResultChanges changes) {
+        if (changes.isEmpty()) {
+            return;
+        }
+        if (changes.isAll()) {
+            invalidateAll();
+            return;
+        }
+        generation.incrementAndGet();
+        invalidate(changes::affects);
+    }
+
+    //이벤트가 없는 벌크 변경 이후
+    public void invalidateAll() {
+        generation.incrementAndGet();
+        invalidations.increment(cache.estimatedSize());
+        cache.invalidateAll();
+    }
+
+    private void invalidate(Predicate<SearchKey> affected) {
+        Collection<SearchKey> keys = cache.asMap().keySet();
+        long before = keys.size();
+        keys.removeIf(affected);
+        invalidations.increment(Math.max(0, before - keys.size()));
+    }
+
+    private static int weigh(Object value) {
+        List<MemberTeamDto> rows = value instanceof CachedPage ? ((CachedPage) value).getContent() : castList(value);
+        long bytes = ENTRY_OVERHEAD_BYTES;
+        for (MemberTeamDto row : rows) {
+            bytes += ROW_OVERHEAD_BYTES + 2L * (length(row.getUsername()) + length(row.getTeamName()));
+        }
+        return (int) Math.min(Integer.MAX_VALUE, bytes);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<MemberTeamDto> castList(Object value) {
+        return (List<MemberTeamDto>) value;
+    }
+
+    private static int length(String value) {
+        return value != null ? value.length() : 0;
+    }
+
+    @Getter
+    private static class CachedPage {
+        private final List<MemberTeamDto> content;
+        private final long total;
+
+        CachedPage(List<MemberTeamDto> content, long total) {
+            this.content = content;
+            this.total = total;
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package study.querydsl.repository.support;
+
+import org.springframework.dao.QueryTimeoutException;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.support.PageableExecutionUtils;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PreDestroy;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+/**
+ * 페이징 content 쿼리와 count 쿼리를 동시에 실행한다.
+ * 각 쿼리는 작업 스레드에서 새 읽기 전용 트랜잭션(= 별도 EntityManager / 커넥션)으로 실행되므로,
+ * 공유 EntityManager 프록시로 만든 Querydsl / JPQL 쿼리를 그대로 넘기면 된다.
+ * 응답 시간은 두 쿼리의 합이 아니라 느린 쪽이 된다. 대신 count 를 생략할 수 있는 경우에도 count 가 실행된다.
+ *
+ * 호출한 스레드가 트랜잭션 밖일 때만 쓴다(canRun). 바깥 트랜잭션이 커넥션을 잡은 채 작업 스레드가 두 개를 더 잡으면
+ * 부하가 걸렸을 때 풀이 바닥난다. 그래서 요청당 커넥션은 최대 2개다.
+ * 큐가 가득 차면 거절된 쿼리는 호출한 스레드에서 같은 방식(새 읽기 전용 트랜잭션)으로 실행한다.
+ *
+ * 타임아웃은 각 쿼리 트랜잭션의 타임아웃(= JDBC 쿼리 타임아웃)으로 건다. 남은 시간으로 잡으므로
+ * 호출한 쪽이 먼저 포기해도 실행 중인 쿼리는 같은 마감에 드라이버가 끊는다. (future 취소로는 JDBC 호출이 멈추지 않는다)
+ */
+@Component
+public class ParallelQueryExecutor {
+
+    private final ParallelQueryProperties properties;
+    private final PlatformTransactionManager transactionManager;
+    private final ThreadPoolTaskExecutor executor;
+
+    public ParallelQueryExecutor(ParallelQueryProperties properties, PlatformTransactionManager transactionManager) {
+        this.properties = properties;
+        this.transactionManager = transactionManager;
+
+        this.executor = new ThreadPoolTaskExecutor();
+        this.executor.setThreadNamePrefix("parallel-query-");
+        this.executor.setCorePoolSize(properties.getThreads());
+        this.executor.setMaxPoolSize(properties.getThreads());
+        this.executor.setQueueCapacity(properties.getQueueCapacity());
+        this.executor.initialize();
+    }
+
+    /**
+     * 켜져 있고 호출한 스레드에 진행 중인 트랜잭션이 없을 때만 true.
+     * 트랜잭션 안이면 flush 하지 않은 변경도 보여야 하므로 그 트랜잭션에서 순차로 실행한다.
+     */
+    public boolean canRun() {
+        return properties.isEnabled() && !TransactionSynchronizationManager.isActualTransactionActive();
+    }
+
+    public <T> Page<T> page(Pageable pageable, Supplier<List<T>> contentQuery, Supplier<Long> countQuery) {
+        long deadline = System.nanoTime() + properties.getTimeout().toNanos();
+        CompletableFuture<List<T>> content = submit(contentQuery, deadline);
+        CompletableFuture<Long> count = submit(countQuery, deadline);
+
+        try {
+            List<T> result = await(content, contentQuery, deadline);
+            Page<T> page = PageableExecutionUtils.getPage(result, pageable, () -> await(count, countQuery, deadline));
+            cancelIfNotStarted(count);
+            return page;
+        } catch (RuntimeException e) {
+            cancelIfNotStarted(content);
+            cancelIfNotStarted(count);
+            throw e;
+        }
+    }
+
+    /**
+     * @return 큐가 가득 차 거절되면 null (await 가 호출한 스레드에서 실행한다)
+     */
+    private <T> CompletableFuture<T> submit(Supplier<T> query, long deadline) {
+        try {
+            return CompletableFuture.supplyAsync(() -> execute(query, deadline), executor);
+        } catch (RejectedExecutionException e) {
+            return null;
+        }
+    }
+
+    private <T> T execute(Supplier<T> query, long deadline) {
+        long remaining = deadline - System.nanoTime();
+        if (remaining <= 0) {
+            throw new QueryTimeoutException("parallel page query timed out before it started");
+        }
+        TransactionTemplate readOnlyTx = new TransactionTemplate(transactionManager);
+        readOnlyTx.setReadOnly(true);
+        readOnlyTx.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        //공유 EntityManager 로 만든 쿼리에는 트랜잭션 타임아웃이 JDBC 쿼리 타임아웃(초 단위, 올림)으로 걸린다
+        readOnlyTx.setTimeout((int) Math.max(1, TimeUnit.NANOSECONDS.toSeconds(remaining + TimeUnit.SECONDS.toNanos(1) - 1)));
+        return readOnlyTx.execute(status -> query.get());
+    }
+
+    private <T> T await(CompletableFuture<T> future, Supplier<T> query, long deadline) {
+        if (future == null) {
+            return execute(query, deadline);
+        }
+        try {
+            return future.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            throw new QueryTimeoutException("parallel page query timed out", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new QueryTimeoutException("parallel page query interrupted", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    //아직 큐에 있는 쿼리만 건너뛴다. 이미 실행 중인 쿼리는 JDBC 쿼리 타임아웃이 끊는다
+    private static void cancelIfNotStarted(CompletableFuture<?> future) {
+        if (future != null) {
+            future.cancel(false);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdown();
+    }
+}
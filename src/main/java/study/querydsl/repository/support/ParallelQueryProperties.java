@@ -0,0 +1,20 @@
+package study.querydsl.repository.support;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+@Getter
+@Setter
+@Component
+@ConfigurationProperties(prefix = "querydsl.search.parallel")
+public class ParallelQueryProperties {
+
+    private boolean enabled = false;
+    private int threads = 8;
+    private int queueCapacity = 100;
+    private Duration timeout = Duration.ofSeconds(5);
+}
@@ -0,0 +1,62 @@
+package study.querydsl.repository.support;
+
+import com.querydsl.jpa.impl.JPAQuery;
+import org.hibernate.FlushMode;
+import org.hibernate.annotations.QueryHints;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.persistence.TypedQuery;
+
+/**
+ * 검색 쿼리 읽기 전용 실행 모드.
+ * - org.hibernate.readOnly : 읽은 엔티티를 읽기 전용으로 올려 dirty checking 용 스냅샷을 남기지 않는다
+ * - org.hibernate.fetchSize : 큰 결과를 드라이버 기본값(행 단위 왕복)보다 크게 묶어 읽는다
+ * - org.hibernate.flushMode COMMIT : 쿼리 전에 영속성 컨텍스트를 flush 하지 않는다 (쓸 것이 없으므로 검사 비용만 든다)
+ *
+ * 읽기 전용 트랜잭션 안이거나 트랜잭션 밖일 때만 건다.
+ * 읽기/쓰기 트랜잭션 안에서는 아직 flush 하지 않은 변경이 결과에 보여야 하고, 읽은 엔티티를 고칠 수도 있으므로 그대로 둔다.
+ * OSIV 로 영속성 컨텍스트를 이어 쓰면 여기서 읽은 엔티티는 뒤의 쓰기 트랜잭션에서도 읽기 전용이다. 고칠 엔티티는 쓰기 트랜잭션 안에서 읽는다.
+ */
+public final class ReadOnlyQueries {
+
+    public static final int FETCH_SIZE = 500;
+
+    private ReadOnlyQueries() {
+    }
+
+    public static <T> JPAQuery<T> readOnly(JPAQuery<T> query) {
+        return readOnly(query, FETCH_SIZE);
+    }
+
+    public static <T> JPAQuery<T> readOnly(JPAQuery<T> query, int fetchSize) {
+        return isReadOnlyContext() ? applyHints(query, fetchSize) : query;
+    }
+
+    public static <T> TypedQuery<T> readOnly(TypedQuery<T> query) {
+        return readOnly(query, FETCH_SIZE);
+    }
+
+    public static <T> TypedQuery<T> readOnly(TypedQuery<T> query, int fetchSize) {
+        return isReadOnlyContext() ? applyHints(query, fetchSize) : query;
+    }
+
+    //트랜잭션 상태를 보지 않고 건다 (벤치마크처럼 직접 트랜잭션을 다루는 곳)
+    public static <T> JPAQuery<T> applyHints(JPAQuery<T> query, int fetchSize) {
+        return query
+                .setHint(QueryHints.READ_ONLY, true)
+                .setHint(QueryHints.FETCH_SIZE, fetchSize)
+                .setHint(QueryHints.FLUSH_MODE, FlushMode.COMMIT);
+    }
+
+    public static <T> TypedQuery<T> applyHints(TypedQuery<T> query, int fetchSize) {
+        return query
+                .setHint(QueryHints.READ_ONLY, true)
+                .setHint(QueryHints.FETCH_SIZE, fetchSize)
+                .setHint(QueryHints.FLUSH_MODE, FlushMode.COMMIT);
+    }
+
+    public static boolean isReadOnlyContext() {
+        return !TransactionSynchronizationManager.isActualTransactionActive()
+                || TransactionSynchronizationManager.isCurrentTransactionReadOnly();
+    }
+}
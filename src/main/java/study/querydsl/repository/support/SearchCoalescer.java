@@ -0,0 +1,94 @@
+package study.querydsl.repository.support;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+/**
+ * 같은 검색(SearchKey)이 동시에 여러 번 들어오면 먼저 온 요청(leader)만 실행하고 나머지(follower)는 그 결과를 같이 쓴다. (single-flight)
+ * 결과를 저장하지는 않으므로 실행이 끝나면 다음 요청은 다시 실행한다. 저장은 MemberSearchResultCache 가 한다.
+ *
+ * 트랜잭션 밖(컨트롤러)에서 불러야 한다. 트랜잭션 안에서 기다리면 follower 마다 커넥션을 잡고 있게 되고,
+ * 커밋하지 않은 변경이 다른 요청에 보일 수 있다.
+ * follower 는 querydsl.search.coalescing.max-wait 까지만 기다리고, 넘으면 직접 실행한다.
+ *
+ * 메트릭: member.search.coalesce{role=leader|follower} (follower / 전체 = 합쳐진 비율), member.search.coalesce.inflight
+ */
+@Component
+public class SearchCoalescer {
+
+    private final Map<SearchKey, CompletableFuture<Object>> inFlight = new ConcurrentHashMap<>();
+    private final boolean enabled;
+    private final Duration maxWait;
+    private final Counter leaders;
+    private final Counter followers;
+    private final Counter followerTimeouts;
+
+    public SearchCoalescer(MeterRegistry meterRegistry,
+                           @Value("${querydsl.search.coalescing.enabled:true}") boolean enabled,
+                           @Value("${querydsl.search.coalescing.max-wait:10s}") Duration maxWait) {
+        this.enabled = enabled;
+        this.maxWait = maxWait;
+        this.leaders = Counter.builder("member.search.coalesce").tag("role", "leader").register(meterRegistry);
+        this.followers = Counter.builder("member.search.coalesce").tag("role", "follower").register(meterRegistry);
+        this.followerTimeouts = Counter.builder("member.search.coalesce.timeouts").register(meterRegistry);
+        Gauge.builder("member.search.coalesce.inflight", inFlight, Map::size).register(meterRegistry);
+    }
+
+    @SuppressWarnings("unchecked")
+    public <T> T execute(SearchKey key, Supplier<T> search) {
+        if (!enabled) {
+            return search.get();
+        }
+        CompletableFuture<Object> mine = new CompletableFuture<>();
+        CompletableFuture<Object> running = inFlight.putIfAbsent(key, mine);
+        if (running != null) {
+            followers.increment();
+            return (T) await(running, search);
+        }
+
+        leaders.increment();
+        try {
+            T result = search.get();
+            mine.complete(result);
+            return result;
+        } catch (RuntimeException | Error e) {
+            mine.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, mine);
+        }
+    }
+
+    private Object await(CompletableFuture<Object> running, Supplier<?> search) {
+        try {
+            return running.get(maxWait.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            followerTimeouts.increment();
+            return search.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("interrupted while waiting for in-flight search", e);
+        } catch (ExecutionException e) {
+            //leader 의 예외를 그대로 받는다
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package study.querydsl.repository.support;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.hibernate.engine.query.spi.HQLQueryPlan;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import javax.persistence.EntityManagerFactory;
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 검색 조건 모양 64가지의 content / count SQL 을 EXPLAIN 해서 풀 스캔하는 테이블을 찾는다.
+ * querydsl.index-advisor.enabled=true 면 기동 직후 한 번 돌려 경고 로그를 남긴다.
+ * 실행 계획 포맷은 H2 기준이다.
+ */
+@Slf4j
+@Component
+public class SearchIndexAdvisor {
+
+    private static final Pattern H2_TABLE_SCAN = Pattern.compile("/\\* (?:\\w+\\.)?(\\w+)\\.tableScan");
+
+    private final SessionFactoryImplementor sessionFactory;
+    private final DataSource dataSource;
+    private final boolean enabled;
+
+    public SearchIndexAdvisor(EntityManagerFactory emf, DataSource dataSource,
+                              @Value("${querydsl.index-advisor.enabled:false}") boolean enabled) {
+        this.sessionFactory = emf.unwrap(SessionFactoryImplementor.class);
+        this.dataSource = dataSource;
+        this.enabled = enabled;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void adviseOnStartup() {
+        if (!enabled) {
+            return;
+        }
+        for (PlanReport report : advise()) {
+            if (report.isUnexpectedFullScan()) {
+                log.warn("full scan on {} for search shape [{}] ({})\n{}",
+                        report.getFullScanTables(), report.getShape(), report.getKind(), report.getPlan());
+            }
+        }
+    }
+
+    public List<PlanReport> advise() {
+        List<PlanReport> reports = new ArrayList<>();
+        for (int shape = 0; shape < MemberSearchQueryCache.SHAPE_COUNT; shape++) {
+            reports.add(explain(shape, "content", MemberSearchQueryCache.contentJpql(shape)));
+            reports.add(explain(shape, "count", MemberSearchQueryCache.countJpql(shape)));
+        }
+        return reports;
+    }
+
+    private PlanReport explain(int shape, String kind, String jpql) {
+        HQLQueryPlan queryPlan = sessionFactory.getQueryPlanCache()
+                .getHQLQueryPlan(jpql, false, Collections.emptyMap());
+        String sql = queryPlan.getSqlStrings()[0];
+
+        StringBuilder plan = new StringBuilder();
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement statement = connection.prepareStatement("EXPLAIN " + sql)) {
+            bindSamples(statement, shape);
+            try (ResultSet rs = statement.executeQuery()) {
+                while (rs.next()) {
+                    plan.append(rs.getString(1)).append('\n');
+                }
+            }
+        } catch (SQLException e) {
+            throw new IllegalStateException("EXPLAIN failed for shape " + MemberSearchQueryCache.describe(shape), e);
+        }
+        return new PlanReport(shape, kind, sql, plan.toString());
+    }
+
+    //SQL 의 ? 순서는 MemberSearchQueryCache 의 where 절 순서
+    //(username, teamName, ageGoe, ageLoe, usernamePrefix, usernameCandidates, usernameContains)와 같다
+    //usernameCandidates 는 실행할 때 목록 크기만큼 펼쳐지므로 계획 SQL 에는 ? 하나뿐이다
+    private static void bindSamples(PreparedStatement statement, int shape) throws SQLException {
+        int index = 1;
+        if ((shape & MemberSearchQueryCache.USERNAME) != 0) {
+            statement.setString(index++, "member1");
+        }
+        if ((shape & MemberSearchQueryCache.TEAM_NAME) != 0) {
+            statement.setString(index++, "teamA");
+        }
+        if ((shape & MemberSearchQueryCache.AGE_GOE) != 0) {
+            statement.setInt(index++, 10);
+        }
+        if ((shape & MemberSearchQueryCache.AGE_LOE) != 0) {
+            statement.setInt(index++, 40);
+        }
+        if ((shape & MemberSearchQueryCache.USERNAME_PREFIX) != 0) {
+            statement.setString(index++, "member%");
+        }
+        if ((shape & MemberSearchQueryCache.USERNAME_CONTAINS) != 0) {
+            statement.setLong(index++, 1L);
+            statement.setString(index, "%ber1%");
+        }
+    }
+
+    @Getter
+    public static class PlanReport {
+        private final String shape;
+        private final String kind;
+        private final String sql;
+        private final String plan;
+        private final Set<String> fullScanTables = new LinkedHashSet<>();
+        private final boolean unexpectedFullScan;
+
+        PlanReport(int shape, String kind, String sql, String plan) {
+            this.shape = MemberSearchQueryCache.describe(shape);
+            this.kind = kind;
+            this.sql = sql;
+            this.plan = plan;
+            Matcher matcher = H2_TABLE_SCAN.matcher(plan);
+            while (matcher.find()) {
+                fullScanTables.add(matcher.group(1).toLowerCase(Locale.ROOT));
+            }
+            //조건이 없으면 전체를 읽는 것이 정상
+            this.unexpectedFullScan = shape != 0 && !fullScanTables.isEmpty();
+        }
+    }
+}
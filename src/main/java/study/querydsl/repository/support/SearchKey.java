@@ -0,0 +1,88 @@
+package study.querydsl.repository.support;
+
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.ToString;
+import org.springframework.data.domain.Pageable;
+import org.springframework.util.StringUtils;
+import study.querydsl.dto.MemberSearchCondition;
+
+/**
+ * 검색 결과 캐시 키. 조건을 정규화해서(빈 문자열/공백은 조건 없음, 리포지토리와 같은 기준) 같은 뜻의 요청이 같은 키가 되게 한다.
+ * MemberSearchCondition 은 바뀔 수 있는 객체라 값을 복사해 둔다.
+ */
+@Getter
+@ToString
+@EqualsAndHashCode
+public class SearchKey {
+
+    public static final String LIST = "list";
+    public static final String PAGE = "page";
+
+    private final String kind;
+    private final String username;
+    private final String usernamePrefix;
+    private final String usernameContains;
+    private final String teamName;
+    private final Integer ageGoe;
+    private final Integer ageLoe;
+    private final long offset;
+    private final int pageSize;
+    private final String sort;
+
+    private SearchKey(String kind, MemberSearchCondition condition, long offset, int pageSize, String sort) {
+        this.kind = kind;
+        this.username = normalize(condition.getUsername());
+        this.usernamePrefix = normalize(condition.getUsernamePrefix());
+        this.usernameContains = normalize(condition.getUsernameContains());
+        this.teamName = normalize(condition.getTeamName());
+        this.ageGoe = condition.getAgeGoe();
+        this.ageLoe = condition.getAgeLoe();
+        this.offset = offset;
+        this.pageSize = pageSize;
+        this.sort = sort;
+    }
+
+    public static SearchKey list(MemberSearchCondition condition) {
+        return new SearchKey(LIST, condition, 0, 0, "");
+    }
+
+    public static SearchKey page(MemberSearchCondition condition, Pageable pageable) {
+        if (pageable.isUnpaged()) {
+            return new SearchKey(PAGE, condition, 0, 0, pageable.getSort().toString());
+        }
+        return new SearchKey(PAGE, condition, pageable.getOffset(), pageable.getPageSize(), pageable.getSort().toString());
+    }
+
+    /**
+     * 회원 한 행이 이 조건에 걸리는지. teamName 을 모르면(지연 로딩 프록시) 걸린다고 본다.
+     */
+    public boolean matches(MemberRow row) {
+        if (username != null && !username.equals(row.getUsername())) {
+            return false;
+        }
+        if (usernamePrefix != null && (row.getUsername() == null || !row.getUsername().startsWith(usernamePrefix))) {
+            return false;
+        }
+        if (usernameContains != null && (row.getUsername() == null || !row.getUsername().contains(usernameContains))) {
+            return false;
+        }
+        if (ageGoe != null && row.getAge() < ageGoe) {
+            return false;
+        }
+        if (ageLoe != null && row.getAge() > ageLoe) {
+            return false;
+        }
+        if (teamName != null) {
+            if (row.getTeamId() == null) {
+                return false;
+            }
+            return row.getTeamName() == null || teamName.equals(row.getTeamName());
+        }
+        return true;
+    }
+
+    private static String normalize(String value) {
+        return StringUtils.hasText(value) ? value : null;
+    }
+}
@@ -0,0 +1,108 @@
+package study.querydsl.repository.support;
+
+import org.hibernate.Hibernate;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.event.spi.EventSource;
+import org.hibernate.event.spi.PostDeleteEvent;
+import org.hibernate.event.spi.PostDeleteEventListener;
+import org.hibernate.event.spi.PostInsertEvent;
+import org.hibernate.event.spi.PostInsertEventListener;
+import org.hibernate.event.spi.PostUpdateEvent;
+import org.hibernate.event.spi.PostUpdateEventListener;
+import org.hibernate.persister.entity.EntityPersister;
+import org.hibernate.proxy.HibernateProxy;
+import study.querydsl.entity.Member;
+import study.querydsl.entity.Team;
+
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 커밋된 Member / Team 변경을 MemberSearchResultCache 에 알린다.
+ * 변경 전/후 값은 이벤트 시점에 세션별 SearchResultChanges 에 모아 두고, 트랜잭션이 성공적으로 끝난 뒤 한 번에 무효화한다.
+ * (변경마다 캐시 키 전체를 훑지 않는다)
+ */
+public class SearchResultCacheEventListener
+        implements PostInsertEventListener, PostUpdateEventListener, PostDeleteEventListener {
+
+    private final MemberSearchResultCache resultCache;
+    private final Map<SharedSessionContractImplementor, SearchResultChanges> pending = new ConcurrentHashMap<>();
+
+    public SearchResultCacheEventListener(MemberSearchResultCache resultCache) {
+        this.resultCache = resultCache;
+    }
+
+    @Override
+    public void onPostInsert(PostInsertEvent event) {
+        if (event.getEntity() instanceof Member) {
+            changesOf(event.getSession()).member(null, rowOf(event.getState(), event.getPersister()));
+        }
+        //회원이 없는 새 팀은 어떤 검색 결과에도 나오지 않는다
+    }
+
+    @Override
+    public void onPostUpdate(PostUpdateEvent event) {
+        EntityPersister persister = event.getPersister();
+        if (event.getEntity() instanceof Member) {
+            //이전 상태를 모르면(분리 상태 update) 옛 값에 걸리던 항목을 찾을 수 없으므로 모두 지운다
+            if (event.getOldState() == null) {
+                changesOf(event.getSession()).all();
+                return;
+            }
+            changesOf(event.getSession()).member(rowOf(event.getOldState(), persister), rowOf(event.getState(), persister));
+        }
+        if (event.getEntity() instanceof Team) {
+            String newName = ((Team) event.getEntity()).getName();
+            String oldName = event.getOldState() != null
+                    ? (String) event.getOldState()[persister.getEntityMetamodel().getPropertyIndex("name")]
+                    : null;
+            if (event.getOldState() == null || !Objects.equals(oldName, newName)) {
+                changesOf(event.getSession()).team(oldName, newName);
+            }
+        }
+    }
+
+    @Override
+    public void onPostDelete(PostDeleteEvent event) {
+        if (event.getEntity() instanceof Member) {
+            changesOf(event.getSession()).member(rowOf(event.getDeletedState(), event.getPersister()), null);
+        }
+        if (event.getEntity() instanceof Team) {
+            String name = ((Team) event.getEntity()).getName();
+            changesOf(event.getSession()).team(name, name);
+        }
+    }
+
+    @Override
+    public boolean requiresPostCommitHanding(EntityPersister persister) {
+        return false;
+    }
+
+    private SearchResultChanges changesOf(EventSource session) {
+        return pending.computeIfAbsent(session, key -> {
+            session.getActionQueue().registerProcess((success, completed) -> {
+                SearchResultChanges changes = pending.remove(session);
+                if (success && changes != null) {
+                    resultCache.changed(changes);
+                }
+            });
+            return new SearchResultChanges();
+        });
+    }
+
+    private static MemberRow rowOf(Object[] state, EntityPersister persister) {
+        String username = (String) state[persister.getEntityMetamodel().getPropertyIndex("username")];
+        int age = (Integer) state[persister.getEntityMetamodel().getPropertyIndex("age")];
+        Object team = state[persister.getEntityMetamodel().getPropertyIndex("team")];
+        if (team == null) {
+            return new MemberRow(username, age, null, null);
+        }
+        if (team instanceof HibernateProxy && !Hibernate.isInitialized(team)) {
+            Long teamId = (Long) ((HibernateProxy) team).getHibernateLazyInitializer().getIdentifier();
+            return new MemberRow(username, age, teamId, null);     //이름을 읽으려고 프록시를 초기화하지 않는다
+        }
+        Team loaded = (Team) Hibernate.unproxy(team);
+        return new MemberRow(username, age, loaded.getId(), loaded.getName());
+    }
+}
@@ -0,0 +1,20 @@
+package study.querydsl.repository.support;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+
+@Getter
+@Setter
+@Component
+@ConfigurationProperties(prefix = "querydsl.search.result-cache")
+public class SearchResultCacheProperties {
+
+    private boolean enabled = true;
+    private DataSize maximumWeight = DataSize.ofMegabytes(64);     //결과 크기 추정치 합계 상한
+    private Duration timeToLive = Duration.ofMinutes(10);          //무효화를 놓쳤을 때의 안전장치
+}
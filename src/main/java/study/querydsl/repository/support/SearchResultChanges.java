@@ -0,0 +1,77 @@
+package study.querydsl.repository.support;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * 한 트랜잭션에서 커밋된 Member / Team 변경 모음. MemberSearchResultCache 는 커밋 후 이것으로 한 번만 무효화한다.
+ * 회원 행이 MAX_ROWS 를 넘으면(대량 적재 등) 행을 더 모으지 않고 전체 무효화로 바꾼다.
+ * 항목마다 모든 행을 대 보는 비용이 변경 건수에 비례해 커지지 않게 하기 위해서다.
+ */
+public class SearchResultChanges {
+
+    static final int MAX_ROWS = 256;
+
+    private final List<MemberRow> rows = new ArrayList<>();
+    private final Set<String> teamNames = new HashSet<>();
+    private boolean teamChanged;
+    private boolean all;
+
+    /**
+     * 변경 전/후 행 (insert 는 before, delete 는 after 가 null)
+     */
+    public void member(MemberRow before, MemberRow after) {
+        addRow(before);
+        addRow(after);
+    }
+
+    /**
+     * 팀 이름 변경 / 삭제
+     */
+    public void team(String oldName, String newName) {
+        teamChanged = true;
+        teamNames.add(oldName);
+        teamNames.add(newName);
+    }
+
+    public void all() {
+        all = true;
+        rows.clear();
+    }
+
+    public boolean isAll() {
+        return all;
+    }
+
+    public boolean isEmpty() {
+        return !all && !teamChanged && rows.isEmpty();
+    }
+
+    /**
+     * 회원 행 중 하나라도 조건에 걸리거나, 바뀐 팀 이름을 조건으로 쓰거나 팀 이름 조건이 없는 항목
+     */
+    boolean affects(SearchKey key) {
+        if (teamChanged && (key.getTeamName() == null || teamNames.contains(key.getTeamName()))) {
+            return true;
+        }
+        for (MemberRow row : rows) {
+            if (key.matches(row)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void addRow(MemberRow row) {
+        if (row == null || all) {
+            return;
+        }
+        if (rows.size() == MAX_ROWS) {
+            all();
+            return;
+        }
+        rows.add(row);
+    }
+}
@@ -0,0 +1,39 @@
+package study.querydsl.repository.support;
+
+import lombok.Getter;
+
+/**
+ * 한 트랜잭션 안에서 팀 하나에 생긴 회원 변화의 합.
+ */
+@Getter
+public class TeamStatsDelta {
+
+    private long count;
+    private long ageSum;
+    private Integer addedMin;
+    private Integer addedMax;
+    private Integer removedMin;
+    private Integer removedMax;
+
+    public void add(int age) {
+        count++;
+        ageSum += age;
+        addedMin = addedMin == null ? age : Math.min(addedMin, age);
+        addedMax = addedMax == null ? age : Math.max(addedMax, age);
+    }
+
+    public void remove(int age) {
+        count--;
+        ageSum -= age;
+        removedMin = removedMin == null ? age : Math.min(removedMin, age);
+        removedMax = removedMax == null ? age : Math.max(removedMax, age);
+    }
+
+    public boolean hasAdded() {
+        return addedMin != null;
+    }
+
+    public boolean hasRemoved() {
+        return removedMin != null;
+    }
+}
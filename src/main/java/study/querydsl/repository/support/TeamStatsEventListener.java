@@ -0,0 +1,120 @@
+package study.querydsl.repository.support;
+
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.event.spi.EventSource;
+import org.hibernate.event.spi.PostDeleteEvent;
+import org.hibernate.event.spi.PostDeleteEventListener;
+import org.hibernate.event.spi.PostInsertEvent;
+import org.hibernate.event.spi.PostInsertEventListener;
+import org.hibernate.event.spi.PostUpdateEvent;
+import org.hibernate.event.spi.PostUpdateEventListener;
+import org.hibernate.persister.entity.EntityPersister;
+import org.hibernate.proxy.HibernateProxy;
+import study.querydsl.entity.Member;
+import study.querydsl.entity.Team;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Member 의 insert / delete / 나이·팀 변경을 팀별 TeamStatsDelta 로 모았다가,
+ * 커밋 직전(flush 이후) 같은 트랜잭션 안에서 team_stats 에 한 번에 반영한다.
+ * 회원 변경과 집계가 함께 커밋되거나 함께 롤백되므로 집계가 어긋나지 않는다.
+ * (벌크 JPQL update/delete 는 이벤트가 없으므로 TeamStatsWriter.recompute 로 맞춰야 한다)
+ */
+public class TeamStatsEventListener
+        implements PostInsertEventListener, PostUpdateEventListener, PostDeleteEventListener {
+
+    private static final String AGE = "age";
+    private static final String TEAM = "team";
+
+    private final Map<SharedSessionContractImplementor, Map<Long, TeamStatsDelta>> pending = new ConcurrentHashMap<>();
+
+    @Override
+    public void onPostInsert(PostInsertEvent event) {
+        if (!(event.getEntity() instanceof Member)) {
+            return;
+        }
+        Object[] state = event.getState();
+        EntityPersister persister = event.getPersister();
+        add(event.getSession(), teamIdOf(state, persister), ageOf(state, persister));
+    }
+
+    @Override
+    public void onPostUpdate(PostUpdateEvent event) {
+        //이전 상태를 모르면(분리 상태 update) 증분을 낼 수 없다. 재구성 작업이 맞춘다
+        if (!(event.getEntity() instanceof Member) || event.getOldState() == null) {
+            return;
+        }
+        EntityPersister persister = event.getPersister();
+        Long oldTeamId = teamIdOf(event.getOldState(), persister);
+        Long newTeamId = teamIdOf(event.getState(), persister);
+        int oldAge = ageOf(event.getOldState(), persister);
+        int newAge = ageOf(event.getState(), persister);
+        if (Objects.equals(oldTeamId, newTeamId) && oldAge == newAge) {
+            return;
+        }
+        remove(event.getSession(), oldTeamId, oldAge);
+        add(event.getSession(), newTeamId, newAge);
+    }
+
+    @Override
+    public void onPostDelete(PostDeleteEvent event) {
+        if (!(event.getEntity() instanceof Member)) {
+            return;
+        }
+        Object[] state = event.getDeletedState();
+        EntityPersister persister = event.getPersister();
+        remove(event.getSession(), teamIdOf(state, persister), ageOf(state, persister));
+    }
+
+    @Override
+    public boolean requiresPostCommitHanding(EntityPersister persister) {
+        return false;
+    }
+
+    private void add(EventSource session, Long teamId, int age) {
+        if (teamId != null) {
+            deltasOf(session).computeIfAbsent(teamId, id -> new TeamStatsDelta()).add(age);
+        }
+    }
+
+    private void remove(EventSource session, Long teamId, int age) {
+        if (teamId != null) {
+            deltasOf(session).computeIfAbsent(teamId, id -> new TeamStatsDelta()).remove(age);
+        }
+    }
+
+    /**
+     * 세션(= 트랜잭션)마다 처음 변경이 생길 때 커밋 전 / 완료 후 처리를 한 번씩 등록한다.
+     */
+    private Map<Long, TeamStatsDelta> deltasOf(EventSource session) {
+        return pending.computeIfAbsent(session, key -> {
+            session.getActionQueue().registerProcess(beforeCompletion -> {
+                Map<Long, TeamStatsDelta> deltas = pending.remove(session);
+                if (deltas != null) {
+                    TeamStatsWriter.apply(session, deltas);
+                }
+            });
+            session.getActionQueue().registerProcess((success, afterCompletion) -> pending.remove(session));
+            return new LinkedHashMap<>();
+        });
+    }
+
+    private static Long teamIdOf(Object[] state, EntityPersister persister) {
+        Object team = state[persister.getEntityMetamodel().getPropertyIndex(TEAM)];
+        if (team == null) {
+            return null;
+        }
+        if (team instanceof HibernateProxy) {
+            return (Long) ((HibernateProxy) team).getHibernateLazyInitializer().getIdentifier();
+        }
+        return ((Team) team).getId();
+    }
+
+    private static int ageOf(Object[] state, EntityPersister persister) {
+        return (Integer) state[persister.getEntityMetamodel().getPropertyIndex(AGE)];
+    }
+}
@@ -0,0 +1,149 @@
+package study.querydsl.repository.support;
+
+import org.hibernate.Session;
+import org.hibernate.query.NativeQuery;
+import study.querydsl.entity.TeamStats;
+
+import javax.persistence.EntityManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Savepoint;
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * team_stats 갱신 SQL.
+ * 네이티브 update 는 synchronized 엔티티를 지정하지 않으면 2차 캐시 전체를 비우므로 항상 TeamStats 로 한정한다.
+ */
+public final class TeamStatsWriter {
+
+    private static final String APPLY_DELTA = "update team_stats set"
+            + " member_count = member_count + :count,"
+            + " age_sum = age_sum + :ageSum"
+            + " where team_id = :teamId";
+
+    private static final String APPLY_ADDED = "update team_stats set"
+            + " age_min = least(coalesce(age_min, :addedMin), :addedMin),"
+            + " age_max = greatest(coalesce(age_max, :addedMax), :addedMax)"
+            + " where team_id = :teamId";
+
+    //빠진 나이가 현재 최소/최대였을 때만 (team_id, age) 인덱스로 다시 구한다
+    private static final String REFRESH_MIN_MAX = "update team_stats set"
+            + " age_min = (select min(m.age) from member m where m.team_id = :teamId),"
+            + " age_max = (select max(m.age) from member m where m.team_id = :teamId)"
+            + " where team_id = :teamId and (age_min >= :removedMin or age_max <= :removedMax)";
+
+    private static final String DELETE_TEAMS = "delete from team_stats where team_id in (:teamIds)";
+
+    private static final String INSERT_TEAMS = "insert into team_stats (team_id, member_count, age_sum, age_min, age_max)"
+            + " select m.team_id, count(*), sum(m.age), min(m.age), max(m.age) from member m"
+            + " where m.team_id in (:teamIds) group by m.team_id";
+
+    private static final String INSERT_TEAM = "insert into team_stats (team_id, member_count, age_sum, age_min, age_max)"
+            + " select m.team_id, count(*), sum(m.age), min(m.age), max(m.age) from member m"
+            + " where m.team_id = ? group by m.team_id";
+
+    private static final String UNIQUE_VIOLATION = "23505";
+
+    private static final String DELETE_ALL = "delete from team_stats";
+
+    private static final String INSERT_ALL = "insert into team_stats (team_id, member_count, age_sum, age_min, age_max)"
+            + " select m.team_id, count(*), sum(m.age), min(m.age), max(m.age) from member m"
+            + " where m.team_id is not null group by m.team_id";
+
+    private TeamStatsWriter() {
+    }
+
+    /**
+     * 증분 적용. 아직 집계 행이 없는 팀(처음 회원이 생긴 팀, 재구성 전 데이터)은 member 에서 그 팀만 다시 센다.
+     * 두 트랜잭션이 같은 팀의 첫 행을 동시에 넣으면 늦은 쪽은 키 중복으로 실패하므로, 그 insert 만 되돌리고 증분을 더한다.
+     * 실행 시점에 member 변경은 이미 flush 되어 있어야 한다.
+     */
+    public static void apply(EntityManager em, Map<Long, TeamStatsDelta> deltas) {
+        for (Map.Entry<Long, TeamStatsDelta> entry : deltas.entrySet()) {
+            Long teamId = entry.getKey();
+            TeamStatsDelta delta = entry.getValue();
+
+            int updated = applyDelta(em, teamId, delta);
+            if (updated == 0) {
+                if (insertTeam(em, teamId)) {
+                    continue;
+                }
+                applyDelta(em, teamId, delta);
+            }
+            if (delta.hasAdded()) {
+                nativeQuery(em, APPLY_ADDED)
+                        .setParameter("addedMin", delta.getAddedMin())
+                        .setParameter("addedMax", delta.getAddedMax())
+                        .setParameter("teamId", teamId)
+                        .executeUpdate();
+            }
+            if (delta.hasRemoved()) {
+                nativeQuery(em, REFRESH_MIN_MAX)
+                        .setParameter("removedMin", delta.getRemovedMin())
+                        .setParameter("removedMax", delta.getRemovedMax())
+                        .setParameter("teamId", teamId)
+                        .executeUpdate();
+            }
+        }
+    }
+
+    private static int applyDelta(EntityManager em, Long teamId, TeamStatsDelta delta) {
+        return nativeQuery(em, APPLY_DELTA)
+                .setParameter("count", delta.getCount())
+                .setParameter("ageSum", delta.getAgeSum())
+                .setParameter("teamId", teamId)
+                .executeUpdate();
+    }
+
+    /**
+     * 실패해도 트랜잭션이 깨지지 않도록 savepoint 안에서 insert 한다. (PostgreSQL 은 실패한 문장이 트랜잭션 전체를 중단시킨다)
+     *
+     * @return 다른 트랜잭션이 먼저 행을 넣어 키가 중복되면 false
+     */
+    private static boolean insertTeam(EntityManager em, Long teamId) {
+        return em.unwrap(Session.class).doReturningWork(connection -> {
+            Savepoint savepoint = connection.setSavepoint();
+            try (PreparedStatement statement = connection.prepareStatement(INSERT_TEAM)) {
+                statement.setLong(1, teamId);
+                statement.executeUpdate();
+            } catch (SQLException e) {
+                if (!UNIQUE_VIOLATION.equals(e.getSQLState())) {
+                    throw e;
+                }
+                connection.rollback(savepoint);
+                return false;
+            }
+            connection.releaseSavepoint(savepoint);
+            return true;
+        });
+    }
+
+    /**
+     * 지정한 팀의 집계를 member 에서 다시 계산한다. (이벤트가 없는 벌크 JPQL 이후 등)
+     */
+    public static void recompute(EntityManager em, Collection<Long> teamIds) {
+        if (teamIds.isEmpty()) {
+            return;
+        }
+        nativeQuery(em, DELETE_TEAMS).setParameterList("teamIds", teamIds).executeUpdate();
+        nativeQuery(em, INSERT_TEAMS).setParameterList("teamIds", teamIds).executeUpdate();
+    }
+
+    /**
+     * 전체 재구성. 실행 중에 커밋된 증분은 덮어써질 수 있으므로 한가한 시간에 돌린다.
+     *
+     * @return 집계 행 수
+     */
+    public static int rebuildAll(EntityManager em) {
+        nativeQuery(em, DELETE_ALL).executeUpdate();
+        return nativeQuery(em, INSERT_ALL).executeUpdate();
+    }
+
+    @SuppressWarnings("rawtypes")
+    private static NativeQuery nativeQuery(EntityManager em, String sql) {
+        return em.createNativeQuery(sql)
+                .unwrap(NativeQuery.class)
+                .addSynchronizedEntityClass(TeamStats.class);
+    }
+}
@@ -0,0 +1,186 @@
+package study.querydsl.repository.support;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * 문자열 3글자(trigram) -> id 목록 역색인.
+ * "abcde" 를 포함하는 값은 반드시 abc, bcd, cde 를 모두 가지므로, 세 목록의 교집합이 후보가 된다.
+ * 후보는 상위 집합일 뿐이므로(순서/연속 여부를 보지 않는다) 실제 포함 여부는 호출한 쪽이 다시 확인해야 한다.
+ * 대신 오래된 항목이 남아 있어도 결과가 틀리지 않고 후보만 늘어난다.
+ *
+ * 목록은 정렬된 long 배열이라 trigram 하나당 id 8바이트를 쓴다. 대소문자를 구분한다. (DB like 와 같다)
+ */
+public class TrigramIndex {
+
+    public static final int GRAM = 3;
+
+    private final Map<Long, Postings> postings = new HashMap<>();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    public void add(long id, String value) {
+        Set<Long> grams = gramsOf(value);
+        if (grams.isEmpty()) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            for (Long gram : grams) {
+                postings.computeIfAbsent(gram, key -> new Postings()).add(id);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void remove(long id, String value) {
+        Set<Long> grams = gramsOf(value);
+        if (grams.isEmpty()) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            for (Long gram : grams) {
+                Postings list = postings.get(gram);
+                if (list != null && list.remove(id) && list.size == 0) {
+                    postings.remove(gram);
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * needle 을 포함할 수 있는 id 를 오름차순으로 돌려준다.
+     *
+     * @return needle 이 3글자보다 짧거나 후보가 maxCandidates 를 넘으면 null (색인으로 좁힐 수 없음)
+     */
+    public long[] candidates(String needle, int maxCandidates) {
+        Set<Long> grams = gramsOf(needle);
+        if (grams.isEmpty()) {
+            return null;
+        }
+        lock.readLock().lock();
+        try {
+            List<Postings> lists = new ArrayList<>(grams.size());
+            for (Long gram : grams) {
+                Postings list = postings.get(gram);
+                if (list == null) {
+                    return new long[0];
+                }
+                lists.add(list);
+            }
+            //가장 짧은 목록에서 출발해 나머지 목록에서 이진 탐색으로 걸러낸다
+            lists.sort(Comparator.comparingInt(list -> list.size));
+            Postings smallest = lists.get(0);
+            if (smallest.size > maxCandidates * 4L) {
+                return null;
+            }
+
+            long[] result = new long[smallest.size];
+            int count = 0;
+            for (int i = 0; i < smallest.size; i++) {
+                long id = smallest.ids[i];
+                if (containsInAll(lists, id)) {
+                    result[count++] = id;
+                }
+            }
+            return count > maxCandidates ? null : Arrays.copyOf(result, count);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int gramCount() {
+        lock.readLock().lock();
+        try {
+            return postings.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public void clear() {
+        lock.writeLock().lock();
+        try {
+            postings.clear();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private static boolean containsInAll(List<Postings> lists, long id) {
+        for (int i = 1; i < lists.size(); i++) {
+            if (lists.get(i).indexOf(id) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    //char 3개(16비트씩)를 long 하나로 묶어 키로 쓴다
+    private static Set<Long> gramsOf(String value) {
+        Set<Long> grams = new LinkedHashSet<>();
+        if (value == null) {
+            return grams;
+        }
+        for (int i = 0; i + GRAM <= value.length(); i++) {
+            grams.add(((long) value.charAt(i) << 32) | ((long) value.charAt(i + 1) << 16) | value.charAt(i + 2));
+        }
+        return grams;
+    }
+
+    /**
+     * 정렬된 id 배열. 시퀀스로 만든 id 는 거의 증가 순서로 들어오므로 대부분 끝에 붙이기만 한다.
+     */
+    private static class Postings {
+        private long[] ids = new long[4];
+        private int size;
+
+        void add(long id) {
+            if (size == 0 || ids[size - 1] < id) {
+                ensureCapacity();
+                ids[size++] = id;
+                return;
+            }
+            int index = indexOf(id);
+            if (index >= 0) {
+                return;
+            }
+            int insertAt = -index - 1;
+            ensureCapacity();
+            System.arraycopy(ids, insertAt, ids, insertAt + 1, size - insertAt);
+            ids[insertAt] = id;
+            size++;
+        }
+
+        boolean remove(long id) {
+            int index = indexOf(id);
+            if (index < 0) {
+                return false;
+            }
+            System.arraycopy(ids, index + 1, ids, index, size - index - 1);
+            size--;
+            return true;
+        }
+
+        int indexOf(long id) {
+            return Arrays.binarySearch(ids, 0, size, id);
+        }
+
+        private void ensureCapacity() {
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size + (size >> 1) + 1);
+            }
+        }
+    }
+}
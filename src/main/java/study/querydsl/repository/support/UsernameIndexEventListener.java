@@ -0,0 +1,91 @@
+package study.querydsl.repository.support;
+
+import org.hibernate.event.spi.PostDeleteEvent;
+import org.hibernate.event.spi.PostDeleteEventListener;
+import org.hibernate.event.spi.PostInsertEvent;
+import org.hibernate.event.spi.PostInsertEventListener;
+import org.hibernate.event.spi.PostUpdateEvent;
+import org.hibernate.event.spi.PostUpdateEventListener;
+import org.hibernate.persister.entity.EntityPersister;
+import study.querydsl.entity.Member;
+
+import java.util.Objects;
+
+/**
+ * Member 의 insert / update / delete 를 UsernameTrigramIndex, UsernameLookupIndex 에 반영한다.
+ * 롤백된 변경이 색인에 들어가지 않도록 트랜잭션이 성공적으로 끝난 뒤에 적용한다.
+ * (벌크 JPQL update/delete 는 이벤트가 없으므로 rebuild 가 필요하다)
+ */
+public class UsernameIndexEventListener
+        implements PostInsertEventListener, PostUpdateEventListener, PostDeleteEventListener {
+
+    private static final String USERNAME = "username";
+
+    private final UsernameTrigramIndex index;
+    private final UsernameLookupIndex lookupIndex;
+
+    public UsernameIndexEventListener(UsernameTrigramIndex index, UsernameLookupIndex lookupIndex) {
+        this.index = index;
+        this.lookupIndex = lookupIndex;
+    }
+
+    @Override
+    public void onPostInsert(PostInsertEvent event) {
+        if (!(event.getEntity() instanceof Member)) {
+            return;
+        }
+        long id = (Long) event.getId();
+        String username = (String) event.getState()[usernameIndex(event.getPersister())];
+        event.getSession().getActionQueue().registerProcess((success, session) -> {
+            if (success) {
+                index.committedInsert(id, username);
+                lookupIndex.committedInsert(id, username);
+            }
+        });
+    }
+
+    @Override
+    public void onPostUpdate(PostUpdateEvent event) {
+        if (!(event.getEntity() instanceof Member)) {
+            return;
+        }
+        int property = usernameIndex(event.getPersister());
+        //이전 상태를 모르면(분리 상태 update) 새 값만 추가한다. 남은 옛 trigram 은 후보만 늘릴 뿐이다
+        String oldUsername = event.getOldState() != null ? (String) event.getOldState()[property] : null;
+        String newUsername = (String) event.getState()[property];
+        if (Objects.equals(oldUsername, newUsername)) {
+            return;
+        }
+        long id = (Long) event.getId();
+        event.getSession().getActionQueue().registerProcess((success, session) -> {
+            if (success) {
+                index.committedUpdate(id, oldUsername, newUsername);
+                lookupIndex.committedUpdate(id, oldUsername, newUsername);
+            }
+        });
+    }
+
+    @Override
+    public void onPostDelete(PostDeleteEvent event) {
+        if (!(event.getEntity() instanceof Member)) {
+            return;
+        }
+        long id = (Long) event.getId();
+        String username = (String) event.getDeletedState()[usernameIndex(event.getPersister())];
+        event.getSession().getActionQueue().registerProcess((success, session) -> {
+            if (success) {
+                index.committedDelete(id, username);
+                lookupIndex.committedDelete(id, username);
+            }
+        });
+    }
+
+    @Override
+    public boolean requiresPostCommitHanding(EntityPersister persister) {
+        return false;
+    }
+
+    private static int usernameIndex(EntityPersister persister) {
+        return persister.getEntityMetamodel().getPropertyIndex(USERNAME);
+    }
+}
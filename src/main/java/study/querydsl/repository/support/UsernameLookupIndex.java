@@ -0,0 +1,276 @@
+package study.querydsl.repository.support;
+
+import com.querydsl.core.Tuple;
+import com.querydsl.jpa.impl.JPAQueryFactory;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.hibernate.annotations.QueryHints;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import study.querydsl.entity.Member;
+
+import javax.persistence.EntityManager;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+import static study.querydsl.entity.QMember.member;
+
+/**
+ * member.username 완전 일치 조회용 username -> 회원 id 색인. 앞에 Bloom filter 를 둔다.
+ * 가입 가능 여부 확인처럼 없는 이름을 묻는 조회가 대부분이라, filter 에서 걸러지면 맵도 DB 도 보지 않는다.
+ * 기동 후 별도 스레드에서 전체 회원을 한 번 읽어 만들고, 이후에는 커밋된 Member 변경을 UsernameIndexEventListener 가 반영한다.
+ *
+ * 찾은 id 는 find 가 PK 로 읽고 username 을 다시 확인한다. 그래서 남은 항목(삭제/이름 변경, 빌드와 겹친 변경)은
+ * 결과를 틀리게 하지 않는다. 반대로 빠진 항목은 "없음" 으로 답하게 되므로, 커밋된 변경은 모두 이 노드의 리스너로 들어와야 한다.
+ * (벌크 update 는 MemberBulkRepository 가 reindex 하고, 애플리케이션 밖에서 바꾼 데이터는 rebuild 가 필요하다)
+ *
+ * 그래서 querydsl.username-index.single-writer 가 true 일 때만 쓴다. (기본 false)
+ * 애플리케이션 노드가 하나이고, member 를 이 애플리케이션의 JPA 로만 쓰는 배포에서만 켠다.
+ * 여러 노드(replica 설정으로 늘린 경우 포함)나 네이티브 SQL / 다른 프로세스가 member 를 쓰면
+ * 다른 곳에서 커밋된 이름을 "없음" 으로 답하므로 가입 / 중복 확인이 틀린다. 이때는 끄고 DB 를 본다.
+ *
+ * 아래 경우에는 null 을 돌려 DB 조회로 돌아간다.
+ * - 색인을 아직 만드는 중이거나 꺼져 있음 (enabled / single-writer 중 하나라도 false)
+ * - 읽기/쓰기 트랜잭션 안 (아직 커밋하지 않은 변경은 색인에 없다)
+ */
+@Slf4j
+@Component
+public class UsernameLookupIndex {
+
+    private static final int BUILD_FETCH_SIZE = 1000;
+    private static final long[] NO_IDS = new long[0];
+
+    private final Map<String, long[]> ids = new ConcurrentHashMap<>();
+    private final JPAQueryFactory queryFactory;
+    private final TransactionTemplate readOnlyTx;
+    private final boolean enabled;
+    private final long expectedInsertions;
+    private final double fpp;
+    private final AtomicLong lookups = new AtomicLong();
+    private final AtomicLong filtered = new AtomicLong();
+    private final AtomicLong falsePositives = new AtomicLong();
+    private final AtomicLong fallbacks = new AtomicLong();
+    private volatile BloomFilter filter;
+    private volatile boolean ready;
+
+    public UsernameLookupIndex(JPAQueryFactory queryFactory, PlatformTransactionManager transactionManager,
+                               MeterRegistry meterRegistry,
+                               @Value("${querydsl.username-index.enabled:true}") boolean enabled,
+                               @Value("${querydsl.username-index.single-writer:false}") boolean singleWriter,
+                               @Value("${querydsl.username-index.expected-insertions:100000}") long expectedInsertions,
+                               @Value("${querydsl.username-index.fpp:0.01}") double fpp) {
+        this.queryFactory = queryFactory;
+        this.readOnlyTx = new TransactionTemplate(transactionManager);
+        this.readOnlyTx.setReadOnly(true);
+        this.enabled = enabled && singleWriter;
+        this.expectedInsertions = expectedInsertions;
+        this.fpp = fpp;
+        this.filter = new BloomFilter(expectedInsertions, fpp);
+
+        //false positive 비율이 fpp 보다 꾸준히 높으면 expected-insertions 를 늘린다
+        FunctionCounter.builder("member.username.index.lookups", lookups, AtomicLong::get)
+                .register(meterRegistry);
+        FunctionCounter.builder("member.username.index.filtered", filtered, AtomicLong::get)
+                .description("Bloom filter 에서 걸러져 DB 를 보지 않은 조회")
+                .register(meterRegistry);
+        FunctionCounter.builder("member.username.index.false-positives", falsePositives, AtomicLong::get)
+                .register(meterRegistry);
+        FunctionCounter.builder("member.username.index.fallbacks", fallbacks, AtomicLong::get)
+                .register(meterRegistry);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void buildOnStartup() {
+        if (!enabled) {
+            return;
+        }
+        Thread builder = new Thread(this::rebuild, "username-lookup-build");
+        builder.setDaemon(true);
+        builder.start();
+    }
+
+    public void rebuild() {
+        ready = false;
+        long start = System.nanoTime();
+        Long members = readOnlyTx.execute(status -> queryFactory.select(member.count()).from(member).fetchOne());
+        synchronized (this) {
+            ids.clear();
+            filter = new BloomFilter(Math.max(expectedInsertions, members * 2), fpp);
+        }
+        //행마다 쓰기 락을 잡으므로 빌드 중에 커밋된 변경도 같은 맵/filter 에 들어간다
+        Long rows = readOnlyTx.execute(status -> {
+            long count = 0;
+            try (Stream<Tuple> stream = queryFactory
+                    .select(member.id, member.username)
+                    .from(member)
+                    .setHint(QueryHints.FETCH_SIZE, BUILD_FETCH_SIZE)
+                    .stream()) {
+                Iterator<Tuple> iterator = stream.iterator();
+                while (iterator.hasNext()) {
+                    Tuple row = iterator.next();
+                    committedInsert(row.get(member.id), row.get(member.username));
+                    count++;
+                }
+            }
+            return count;
+        });
+        ready = true;
+        log.info("username lookup index built: {} members, {} names, bloom {} bits / {} hashes, {} ms",
+                rows, ids.size(), filter.getBitSize(), filter.getHashCount(), (System.nanoTime() - start) / 1_000_000);
+    }
+
+    /**
+     * @return username 이 같을 수 있는 회원 id (오름차순, 없으면 빈 목록), 색인을 쓸 수 없으면 null
+     */
+    public List<Long> lookup(String username) {
+        if (username == null || !usable()) {
+            fallbacks.incrementAndGet();
+            return null;
+        }
+        lookups.incrementAndGet();
+        if (!filter.mightContain(username)) {
+            filtered.incrementAndGet();
+            return Collections.emptyList();
+        }
+        long[] found = ids.getOrDefault(username, NO_IDS);
+        if (found.length == 0) {
+            falsePositives.incrementAndGet();
+            return Collections.emptyList();
+        }
+        List<Long> result = new ArrayList<>(found.length);
+        for (long id : found) {
+            result.add(id);
+        }
+        return result;
+    }
+
+    /**
+     * 색인으로 찾은 id 를 PK 로 읽는다. (영속성 컨텍스트에 있으면 SQL 없음) 남은 항목은 username 을 다시 확인해 거른다.
+     * @return username 이 같은 회원 (id 오름차순), 색인을 쓸 수 없으면 null
+     */
+    public List<Member> find(EntityManager em, String username) {
+        List<Long> candidates = lookup(username);
+        if (candidates == null) {
+            return null;
+        }
+        List<Member> result = new ArrayList<>(candidates.size());
+        for (Long id : candidates) {
+            Member found = em.find(Member.class, id);
+            if (found != null && username.equals(found.getUsername())) {
+                result.add(found);
+            }
+        }
+        return result;
+    }
+
+    private boolean usable() {
+        if (!enabled || !ready) {
+            return false;
+        }
+        return !TransactionSynchronizationManager.isActualTransactionActive()
+                || TransactionSynchronizationManager.isCurrentTransactionReadOnly();
+    }
+
+    //커밋된 변경만 들어온다 (UsernameIndexEventListener). filter 교체와 겹치지 않도록 쓰기는 직렬화한다
+    synchronized void committedInsert(long id, String username) {
+        if (username == null) {
+            return;
+        }
+        ids.compute(username, (name, current) -> add(current, id));
+        filter.put(username);
+        if (filter.isSaturated()) {
+            resizeFilter();
+        }
+    }
+
+    synchronized void committedUpdate(long id, String oldUsername, String newUsername) {
+        committedDelete(id, oldUsername);
+        committedInsert(id, newUsername);
+    }
+
+    //filter 에서는 지울 수 없다. 맵에서만 빼고, filter 에 남은 비트는 false positive 로 처리된다
+    synchronized void committedDelete(long id, String username) {
+        if (username == null) {
+            return;
+        }
+        ids.computeIfPresent(username, (name, current) -> remove(current, id));
+    }
+
+    /**
+     * 이벤트 없이 바뀐 회원(벌크 update)을 다시 넣는다. 옛 이름 항목은 남지만 PK 조회에서 걸러진다.
+     * 커밋된 뒤에 불러야 한다.
+     */
+    public void reindex(long id, String username) {
+        committedInsert(id, username);
+    }
+
+    //맵의 이름으로 두 배 크기의 filter 를 새로 만든다. 삭제된 이름의 비트도 이때 사라진다
+    private void resizeFilter() {
+        BloomFilter resized = new BloomFilter(Math.max(expectedInsertions, ids.size() * 2L), fpp);
+        for (String username : ids.keySet()) {
+            resized.put(username);
+        }
+        filter = resized;
+        log.info("username bloom filter resized: {} names, {} bits", ids.size(), resized.getBitSize());
+    }
+
+    private static long[] add(long[] current, long id) {
+        if (current == null) {
+            return new long[]{id};
+        }
+        int position = Arrays.binarySearch(current, id);
+        if (position >= 0) {
+            return current;
+        }
+        int insertAt = -position - 1;
+        long[] next = new long[current.length + 1];
+        System.arraycopy(current, 0, next, 0, insertAt);
+        next[insertAt] = id;
+        System.arraycopy(current, insertAt, next, insertAt + 1, current.length - insertAt);
+        return next;
+    }
+
+    //빈 배열 대신 null 을 돌려 맵에서 이름을 뺀다
+    private static long[] remove(long[] current, long id) {
+        int position = Arrays.binarySearch(current, id);
+        if (position < 0) {
+            return current;
+        }
+        if (current.length == 1) {
+            return null;
+        }
+        long[] next = new long[current.length - 1];
+        System.arraycopy(current, 0, next, 0, position);
+        System.arraycopy(current, position + 1, next, position, current.length - position - 1);
+        return next;
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    public long getLookups() {
+        return lookups.get();
+    }
+
+    public long getFiltered() {
+        return filtered.get();
+    }
+
+    public long getFalsePositives() {
+        return falsePositives.get();
+    }
+}
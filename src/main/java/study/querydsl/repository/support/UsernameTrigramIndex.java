@@ -0,0 +1,166 @@
+package study.querydsl.repository.support;
+
+import com.querydsl.core.Tuple;
+import com.querydsl.jpa.impl.JPAQueryFactory;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.hibernate.annotations.QueryHints;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+import static study.querydsl.entity.QMember.member;
+
+/**
+ * member.username 부분 일치 검색용 trigram 색인.
+ * 기동 후 별도 스레드에서 전체 회원을 한 번 읽어 만들고, 이후에는 커밋된 Member 변경을 UsernameIndexEventListener 가 반영한다.
+ * 색인은 후보 id 만 좁히고 DB 가 like 로 다시 확인하므로, 빌드 중에 들어온 변경과 순서가 섞여도 결과는 정확하다.
+ *
+ * 후보에 없는 회원은 결과에서 빠진다. 그래서 이 JVM 이 모르는 쓰기(다른 노드, 네이티브 SQL, 이벤트 없는 벌크 JPQL)가 있으면
+ * 검색 결과가 조용히 줄어든다. UsernameLookupIndex 와 같이 querydsl.username-index.single-writer 가 true 일 때만 쓴다.
+ * (남은 옛 trigram 은 후보만 늘릴 뿐이지만, 빠진 trigram 은 결과를 잃는다)
+ *
+ * 아래 경우에는 null 을 돌려 like '%x%' 스캔으로 돌아간다.
+ * - single-writer 가 아님 (색인을 만들지도 않는다)
+ * - 색인을 아직 만드는 중
+ * - 검색어가 3글자보다 짧거나 후보가 querydsl.search.trigram.max-candidates 보다 많음
+ * - 읽기/쓰기 트랜잭션 안 (아직 커밋하지 않은 변경은 색인에 없다)
+ */
+@Slf4j
+@Component
+public class UsernameTrigramIndex {
+
+    private static final int BUILD_FETCH_SIZE = 1000;
+
+    private final TrigramIndex index = new TrigramIndex();
+    private final JPAQueryFactory queryFactory;
+    private final TransactionTemplate readOnlyTx;
+    private final boolean enabled;
+    private final int maxCandidates;
+    private final AtomicLong lookups = new AtomicLong();
+    private final AtomicLong fallbacks = new AtomicLong();
+    private volatile boolean ready;
+
+    public UsernameTrigramIndex(JPAQueryFactory queryFactory, PlatformTransactionManager transactionManager,
+                                MeterRegistry meterRegistry,
+                                @Value("${querydsl.search.trigram.enabled:true}") boolean enabled,
+                                @Value("${querydsl.username-index.single-writer:false}") boolean singleWriter,
+                                @Value("${querydsl.search.trigram.max-candidates:10000}") int maxCandidates) {
+        this.queryFactory = queryFactory;
+        this.readOnlyTx = new TransactionTemplate(transactionManager);
+        this.readOnlyTx.setReadOnly(true);
+        this.enabled = enabled && singleWriter;
+        this.maxCandidates = maxCandidates;
+
+        //fallback 비율이 높으면 max-candidates 나 검색어 길이 제한을 다시 봐야 한다
+        FunctionCounter.builder("member.search.trigram.lookups", lookups, AtomicLong::get)
+                .register(meterRegistry);
+        FunctionCounter.builder("member.search.trigram.fallbacks", fallbacks, AtomicLong::get)
+                .register(meterRegistry);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void buildOnStartup() {
+        if (!enabled) {
+            return;
+        }
+        Thread builder = new Thread(this::rebuild, "username-trigram-build");
+        builder.setDaemon(true);
+        builder.start();
+    }
+
+    public void rebuild() {
+        ready = false;
+        index.clear();
+        long start = System.nanoTime();
+        Long rows = readOnlyTx.execute(status -> {
+            long count = 0;
+            try (Stream<Tuple> stream = queryFactory
+                    .select(member.id, member.username)
+                    .from(member)
+                    .setHint(QueryHints.FETCH_SIZE, BUILD_FETCH_SIZE)
+                    .stream()) {
+                Iterator<Tuple> iterator = stream.iterator();
+                while (iterator.hasNext()) {
+                    Tuple row = iterator.next();
+                    index.add(row.get(member.id), row.get(member.username));
+                    count++;
+                }
+            }
+            return count;
+        });
+        ready = true;
+        log.info("username trigram index built: {} members, {} grams, {} ms",
+                rows, index.gramCount(), (System.nanoTime() - start) / 1_000_000);
+    }
+
+    /**
+     * @return username 에 needle 이 들어 있을 수 있는 회원 id (오름차순), 색인을 쓸 수 없으면 null
+     */
+    public List<Long> lookup(String needle) {
+        lookups.incrementAndGet();
+        long[] candidates = usable() ? index.candidates(needle, maxCandidates) : null;
+        if (candidates == null) {
+            fallbacks.incrementAndGet();
+            return null;
+        }
+        List<Long> ids = new ArrayList<>(candidates.length);
+        for (long id : candidates) {
+            ids.add(id);
+        }
+        return ids;
+    }
+
+    private boolean usable() {
+        if (!enabled || !ready) {
+            return false;
+        }
+        return !TransactionSynchronizationManager.isActualTransactionActive()
+                || TransactionSynchronizationManager.isCurrentTransactionReadOnly();
+    }
+
+    //커밋된 변경만 들어온다 (UsernameIndexEventListener)
+    void committedInsert(long id, String username) {
+        index.add(id, username);
+    }
+
+    void committedUpdate(long id, String oldUsername, String newUsername) {
+        index.remove(id, oldUsername);
+        index.add(id, newUsername);
+    }
+
+    void committedDelete(long id, String username) {
+        index.remove(id, username);
+    }
+
+    /**
+     * 이벤트 없이 바뀐 회원(벌크 update)을 다시 넣는다. 옛 이름의 trigram 은 남지만 후보만 늘어날 뿐이다.
+     * 커밋된 뒤에 불러야 한다. 이렇게 알려 주지 않는 쓰기가 있으면 single-writer 를 켜면 안 된다.
+     */
+    public void reindex(long id, String username) {
+        index.add(id, username);
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    public long getLookups() {
+        return lookups.get();
+    }
+
+    public long getFallbacks() {
+        return fallbacks.get();
+    }
+}
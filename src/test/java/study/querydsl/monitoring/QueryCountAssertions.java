@@ -0,0 +1,52 @@
+package study.querydsl.monitoring;
+
+import java.util.function.Supplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * 블록 안에서 하이버네이트가 실행한 SQL 수를 검증한다. N+1 이 다시 생기면 테스트가 깨진다.
+ * 영속성 컨텍스트에 쌓인 insert 가 자동 flush 로 같이 세지지 않도록, 호출 전에 em.flush(); em.clear(); 를 해 둘 것.
+ *
+ * assertQueryCount(2, () -> memberRepository.searchPageComplex(condition, pageable));
+ */
+public final class QueryCountAssertions {
+
+    private QueryCountAssertions() {
+    }
+
+    public static <T> T assertQueryCount(int expected, Supplier<T> block) {
+        QueryMetricsScope scope = QueryMetricsScope.open("test", "n/a");
+        T result;
+        try {
+            result = block.get();
+        } finally {
+            scope.close();
+        }
+        assertThat(scope.getStatements())
+                .as("SQL statements, last = %s", scope.getLastSql())
+                .isEqualTo(expected);
+        return result;
+    }
+
+    public static void assertQueryCount(int expected, Runnable block) {
+        assertQueryCount(expected, () -> {
+            block.run();
+            return null;
+        });
+    }
+
+    public static <T> T assertMaxQueryCount(int max, Supplier<T> block) {
+        QueryMetricsScope scope = QueryMetricsScope.open("test", "n/a");
+        T result;
+        try {
+            result = block.get();
+        } finally {
+            scope.close();
+        }
+        assertThat(scope.getStatements())
+                .as("SQL statements, last = %s", scope.getLastSql())
+                .isLessThanOrEqualTo(max);
+        return result;
+    }
+}
@@ -0,0 +1,112 @@
+package study.querydsl.monitoring;
+
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SlowQueryRecorderTest {
+
+    JdbcDataSource target;
+    SlowQueryRecorder recorder;
+
+    @BeforeEach
+    public void before() throws SQLException {
+        target = new JdbcDataSource();
+        target.setURL("jdbc:h2:mem:slowquery;DB_CLOSE_DELAY=-1");
+        try (Connection connection = target.getConnection();
+             Statement statement = connection.createStatement()) {
+            statement.execute("create table member_t (id bigint primary key, username varchar(255))");
+            statement.execute("insert into member_t values (1, 'member1'), (2, 'member2')");
+        }
+    }
+
+    @AfterEach
+    public void after() throws SQLException {
+        recorder.shutdown();
+        try (Connection connection = target.getConnection();
+             Statement statement = connection.createStatement()) {
+            statement.execute("drop table member_t");
+        }
+    }
+
+    @Test
+    @DisplayName("임계값을 넘은 SQL 의 JPQL / 파라미터 / 호출 메서드를 남기고 EXPLAIN 을 붙인다")
+    public void recordAndExplain() throws Exception {
+        // given
+        recorder = new SlowQueryRecorder(Duration.ZERO, 10, true);
+        DataSource dataSource = new SlowQueryDataSource(target,
+                new StaticListableBeanFactory(Collections.singletonMap("slowQueryRecorder", recorder))
+                        .getBeanProvider(SlowQueryRecorder.class));
+
+        // when
+        QueryMetricsScope scope = QueryMetricsScope.open("MemberJpaRepository.findByUsername", "n/a");
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement statement = connection.prepareStatement(
+                     "/* select m from Member m where m.username = :username */ select id from member_t where username = ?")) {
+            statement.setString(1, "member1");
+            try (ResultSet rs = statement.executeQuery()) {
+                assertThat(rs.next()).isTrue();
+            }
+        } finally {
+            scope.close();
+        }
+
+        // then
+        List<SlowQueryEntry> entries = recorder.worstOffenders();
+        assertThat(entries).hasSize(1);
+        SlowQueryEntry entry = entries.get(0);
+        assertThat(entry.getMethod()).isEqualTo("MemberJpaRepository.findByUsername");
+        assertThat(entry.getJpql()).isEqualTo("select m from Member m where m.username = :username");
+        assertThat(entry.getSql()).isEqualTo("select id from member_t where username = ?");
+        assertThat(entry.getParameters()).containsExactly("member1");
+
+        //EXPLAIN 은 별도 스레드에서 돈다
+        String plan = null;
+        for (int i = 0; i < 50 && plan == null; i++) {
+            TimeUnit.MILLISECONDS.sleep(100);
+            plan = recorder.worstOffenders().get(0).getPlan();
+        }
+        assertThat(plan).isNotBlank().doesNotStartWith("EXPLAIN failed");
+    }
+
+    @Test
+    @DisplayName("문장별로 가장 느린 실행만 남기고, 가득 차면 가장 덜 느린 문장을 버린다")
+    public void keepWorstOffenders() {
+        // given
+        recorder = new SlowQueryRecorder(Duration.ofMillis(10), 2, false);
+        long ms = TimeUnit.MILLISECONDS.toNanos(1);
+
+        // when
+        recorder.record(target, "select 1", new Object[0], 20 * ms);
+        recorder.record(target, "select 2", new Object[]{"a"}, 30 * ms);
+        recorder.record(target, "select 2", new Object[]{"b"}, 50 * ms);
+        recorder.record(target, "select 2", new Object[]{"c"}, 40 * ms);
+        recorder.record(target, "select 3", new Object[0], 15 * ms);     //select 1 보다 빠르므로 버린다
+        recorder.record(target, "select 4", new Object[0], 25 * ms);     //select 1 을 밀어낸다
+
+        // then
+        List<SlowQueryEntry> entries = recorder.worstOffenders();
+        assertThat(recorder.isSlow(5 * ms)).isFalse();
+        assertThat(entries).extracting("sql").containsExactly("select 2", "select 4");
+        assertThat(entries.get(0).getCount()).isEqualTo(3);
+        assertThat(entries.get(0).getMaxMillis()).isEqualTo(50.0);
+        assertThat(entries.get(0).getParameters()).containsExactly("b");
+        assertThat(entries.get(0).getPlan()).isNull();
+    }
+}
@@ -0,0 +1,239 @@
+package study.querydsl.repository;
+
+import com.querydsl.jpa.impl.JPAQueryFactory;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import study.querydsl.dto.ChangeDto;
+import study.querydsl.dto.CursorSlice;
+import study.querydsl.entity.ChangeLog;
+import study.querydsl.entity.Member;
+import study.querydsl.entity.Team;
+import study.querydsl.repository.support.ChangeFeedResetException;
+import study.querydsl.repository.support.ChangeLogEventListener;
+import study.querydsl.repository.support.ChangeLogWriter;
+import study.querydsl.repository.support.ChangeToken;
+
+import javax.persistence.EntityManager;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * 변경 기록은 커밋 직전에 쓰이므로 롤백하는 @Transactional 테스트 대신 실제로 커밋하고 지운다.
+ */
+@SpringBootTest
+class ChangeLogRepositoryTest {
+
+    @Autowired
+    EntityManager em;
+    @Autowired
+    ChangeLogRepository changeLogRepository;
+    @Autowired
+    JPAQueryFactory queryFactory;
+    @Autowired
+    PlatformTransactionManager transactionManager;
+
+    @AfterEach
+    public void cleanUp() {
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            em.createQuery("delete from Member").executeUpdate();
+            em.createQuery("delete from Team").executeUpdate();
+            em.createQuery("delete from TeamStats").executeUpdate();
+            em.createQuery("delete from ChangeLog").executeUpdate();
+        });
+    }
+
+    @Test
+    @DisplayName("토큰 이후 변경만 배치로, 같은 엔티티는 마지막 변경 하나로")
+    public void changesSince() {
+        // given
+        TransactionTemplate tx = new TransactionTemplate(transactionManager);
+        String head = changeLogRepository.currentToken();
+        Long[] ids = tx.execute(status -> {
+            Team teamA = new Team("teamA");
+            em.persist(teamA);
+            Member member1 = new Member("member1", 10, teamA);
+            Member member2 = new Member("member2", 20, teamA);
+            em.persist(member1);
+            em.persist(member2);
+            return new Long[]{member1.getId(), member2.getId()};
+        });
+        tx.executeWithoutResult(status -> {
+            em.find(Member.class, ids[0]).setAge(11);
+            em.remove(em.find(Member.class, ids[1]));
+        });
+
+        // when
+        CursorSlice<ChangeDto> first = changeLogRepository.findChanges(head, 2);
+        CursorSlice<ChangeDto> rest = changeLogRepository.findChanges(first.getNextCursor(), 100);
+        CursorSlice<ChangeDto> none = changeLogRepository.findChanges(rest.getNextCursor(), 100);
+
+        // then : teamA, member1, member2 insert / member1 update, member2 delete
+        assertThat(first.isHasNext()).isTrue();
+        assertThat(first.getContent()).extracting("entityType").containsExactly("TEAM", "MEMBER");
+        assertThat(rest.isHasNext()).isFalse();
+        assertThat(rest.getContent()).extracting("operation").containsExactly("UPDATE", "DELETE");
+        assertThat(rest.getContent().get(0).getMember().getAge()).isEqualTo(11);
+        assertThat(rest.getContent().get(1).getMember()).isNull();
+        assertThat(none.getContent()).isEmpty();
+        assertThat(none.getNextCursor()).isEqualTo(rest.getNextCursor());
+    }
+
+    @Test
+    @DisplayName("커밋 중인 작은 id 가 비어 있으면 거기서 멈추고, 커밋된 뒤 이어서 읽는다")
+    public void waitForLateCommit() throws Exception {
+        // given : 앞선 변경 하나 뒤에서 시작, 다음 id 는 아직 커밋하지 않은 트랜잭션이 잡고 있다
+        TransactionTemplate tx = new TransactionTemplate(transactionManager);
+        Long teamId = tx.execute(status -> {
+            Team teamA = new Team("teamA");
+            em.persist(teamA);
+            return teamA.getId();
+        });
+        String head = changeLogRepository.currentToken();
+        CountDownLatch written = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        Future<?> inFlight = executor.submit(() -> tx.executeWithoutResult(status -> {
+            ChangeLogWriter.write(em, List.of(teamUpdate(teamId)));
+            written.countDown();
+            await(release);
+        }));
+        await(written);
+        Long memberId = tx.execute(status -> {
+            Member member1 = new Member("member1", 10, em.find(Team.class, teamId));
+            em.persist(member1);
+            return member1.getId();
+        });
+
+        // when
+        CursorSlice<ChangeDto> waiting = changeLogRepository.findChanges(head, 100);
+        release.countDown();
+        inFlight.get(30, TimeUnit.SECONDS);
+        executor.shutdown();
+        CursorSlice<ChangeDto> committed = changeLogRepository.findChanges(waiting.getNextCursor(), 100);
+
+        // then
+        assertThat(waiting.getContent()).isEmpty();
+        assertThat(ChangeToken.decode(waiting.getNextCursor()).getGapSeenAt()).isPositive();
+        assertThat(committed.getContent()).extracting("entityId").containsExactly(teamId, memberId);
+        assertThat(ChangeToken.decode(committed.getNextCursor()).getGapSeenAt()).isZero();
+    }
+
+    @Test
+    @DisplayName("single-writer 면 롤백된 트랜잭션의 id 는 기다리지 않고 바로 건너뛴다")
+    public void skipRolledBackId() {
+        // given
+        TransactionTemplate tx = new TransactionTemplate(transactionManager);
+        Long teamId = tx.execute(status -> {
+            Team teamA = new Team("teamA");
+            em.persist(teamA);
+            return teamA.getId();
+        });
+        String head = changeLogRepository.currentToken();
+        tx.executeWithoutResult(status -> {
+            ChangeLogWriter.write(em, List.of(teamUpdate(teamId)));
+            status.setRollbackOnly();
+        });
+        Long memberId = tx.execute(status -> {
+            Member member1 = new Member("member1", 10, em.find(Team.class, teamId));
+            em.persist(member1);
+            return member1.getId();
+        });
+
+        // when
+        CursorSlice<ChangeDto> skipped = changeLogRepository.findChanges(head, 100);
+
+        // then
+        assertThat(skipped.getContent()).extracting("entityId").containsExactly(memberId);
+        assertThat(ChangeToken.decode(skipped.getNextCursor()).getGapSeenAt()).isZero();
+    }
+
+    @Test
+    @DisplayName("다른 곳에서도 쓰면 gap-timeout 동안 끝내 안 보이는 id 를 롤백된 것으로 보고 건너뛴다")
+    public void skipAfterGapTimeout() throws InterruptedException {
+        // given : 이 JVM 이 모르는 쓰기가 id 하나를 받고 끝내 커밋하지 않는다
+        ChangeLogRepository notSingleWriter = new ChangeLogRepository(queryFactory, new SimpleMeterRegistry(),
+                Duration.ofMillis(500), false);
+        TransactionTemplate tx = new TransactionTemplate(transactionManager);
+        Long teamId = tx.execute(status -> {
+            Team teamA = new Team("teamA");
+            em.persist(teamA);
+            return teamA.getId();
+        });
+        String head = changeLogRepository.currentToken();
+        tx.execute(status -> reserveChangeId());
+        Long memberId = tx.execute(status -> {
+            Member member1 = new Member("member1", 10, em.find(Team.class, teamId));
+            em.persist(member1);
+            return member1.getId();
+        });
+
+        // when
+        CursorSlice<ChangeDto> waiting = tx.execute(status -> notSingleWriter.findChanges(head, 100));
+        TimeUnit.MILLISECONDS.sleep(600);
+        CursorSlice<ChangeDto> skipped = tx.execute(status -> notSingleWriter.findChanges(waiting.getNextCursor(), 100));
+
+        // then
+        assertThat(waiting.getContent()).isEmpty();
+        assertThat(skipped.getContent()).extracting("entityId").containsExactly(memberId);
+    }
+
+    @Test
+    @DisplayName("기록 없이 바뀐 데이터 뒤의 리셋 표시 - 앞의 변경은 돌려주고, 다음 요청은 전체를 다시 받으라고 알린다")
+    public void resetMarker() {
+        // given
+        TransactionTemplate tx = new TransactionTemplate(transactionManager);
+        String head = changeLogRepository.currentToken();
+        Long teamId = tx.execute(status -> {
+            Team teamA = new Team("teamA");
+            em.persist(teamA);
+            return teamA.getId();
+        });
+        tx.executeWithoutResult(status -> {
+            em.setProperty(ChangeLogEventListener.SKIP, true);
+            em.persist(new Member("unlogged", 10));
+            ChangeLogWriter.writeReset(em);
+        });
+
+        // when
+        CursorSlice<ChangeDto> beforeReset = changeLogRepository.findChanges(head, 100);
+        String nextCursor = beforeReset.getNextCursor();
+        String newHead = changeLogRepository.currentToken();
+
+        // then
+        assertThat(beforeReset.getContent()).extracting("entityId").containsExactly(teamId);
+        assertThat(beforeReset.isHasNext()).isTrue();
+        assertThatThrownBy(() -> changeLogRepository.findChanges(nextCursor, 100))
+                .isInstanceOf(ChangeFeedResetException.class);
+        assertThat(changeLogRepository.findChanges(newHead, 100).getContent()).isEmpty();
+    }
+
+    private static ChangeLogWriter.Change teamUpdate(long teamId) {
+        return new ChangeLogWriter.Change(ChangeLog.EntityType.TEAM, teamId, ChangeLog.Operation.UPDATE);
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            assertThat(latch.await(10, TimeUnit.SECONDS)).isTrue();
+        } catch (InterruptedException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private long reserveChangeId() {
+        return ((Number) em.createNativeQuery("select next value for change_log_seq").getSingleResult()).longValue();
+    }
+}
@@ -0,0 +1,164 @@
+package study.querydsl.repository;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.dao.InvalidDataAccessApiUsageException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import study.querydsl.dto.TeamStatsDto;
+import study.querydsl.entity.Member;
+import study.querydsl.entity.Team;
+import study.querydsl.repository.support.BulkProgress;
+
+import javax.persistence.EntityManager;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static study.querydsl.entity.QMember.member;
+
+/**
+ * 청크마다 커밋하므로 롤백하는 @Transactional 테스트 대신 실제로 커밋하고 지운다.
+ */
+@SpringBootTest
+class MemberBulkRepositoryTest {
+
+    @Autowired
+    EntityManager em;
+    @Autowired
+    MemberBulkRepository memberBulkRepository;
+    @Autowired
+    TeamRepository teamRepository;
+    @Autowired
+    PlatformTransactionManager transactionManager;
+
+    @AfterEach
+    public void cleanUp() {
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            em.createQuery("delete from Member").executeUpdate();
+            em.createQuery("delete from Team").executeUpdate();
+            em.createQuery("delete from TeamStats").executeUpdate();
+        });
+    }
+
+    @Test
+    @DisplayName("청크 단위 벌크 수정 - 진행 상황 보고, 읽기 전용 영속성 컨텍스트의 대상만 detach")
+    public void chunkedUpdate() {
+        // given : 나이 0 ~ 9 인 회원 10명
+        TransactionTemplate tx = new TransactionTemplate(transactionManager);
+        TransactionTemplate readOnlyTx = new TransactionTemplate(transactionManager);
+        readOnlyTx.setReadOnly(true);
+        Long firstId = tx.execute(status -> saveMembers(10));
+        List<BulkProgress> progress = new ArrayList<>();
+
+        // when : 나이 5 미만(5명)을 3건씩
+        readOnlyTx.executeWithoutResult(status -> {
+            Member loaded = em.find(Member.class, firstId);     //age 0, 업데이트 대상
+            long updated = memberBulkRepository.update(member.age.lt(5),
+                    clause -> clause.set(member.age, member.age.add(100)), 3, progress::add);
+
+            // then
+            assertThat(updated).isEqualTo(5);
+            assertThat(em.contains(loaded)).isFalse();
+            assertThat(em.find(Member.class, firstId).getAge()).isEqualTo(100);
+        });
+
+        assertThat(progress).extracting("chunks").containsExactly(1, 2);
+        assertThat(progress).extracting("affected").containsExactly(3L, 5L);
+
+        TeamStatsDto stats = tx.execute(status -> teamRepository.findTeamStats(PageRequest.of(0, 10)).getContent().get(0));
+        assertThat(stats.getAgeSum()).isEqualTo(45 + 500);
+        assertThat(stats.getAgeMax()).isEqualTo(104);
+    }
+
+    @Test
+    @DisplayName("청크 단위 벌크 삭제")
+    public void chunkedDelete() {
+        // given
+        TransactionTemplate tx = new TransactionTemplate(transactionManager);
+        tx.execute(status -> saveMembers(10));
+        List<BulkProgress> progress = new ArrayList<>();
+
+        // when
+        long deleted = memberBulkRepository.delete(member.age.goe(4), 4, progress::add);
+
+        // then
+        assertThat(deleted).isEqualTo(6);
+        assertThat(progress).hasSize(2);
+        TeamStatsDto stats = tx.execute(status -> teamRepository.findTeamStats(PageRequest.of(0, 10)).getContent().get(0));
+        assertThat(stats.getMemberCount()).isEqualTo(4);
+        assertThat(stats.getAgeMax()).isEqualTo(3);
+    }
+
+    @Test
+    @DisplayName("중단된 실행을 마지막 BulkProgress.lastId 다음부터 이어서")
+    public void resumeFromLastId() {
+        // given : 나이 4 이상(6명)을 4건씩 지우다 첫 청크 커밋 후 중단
+        TransactionTemplate tx = new TransactionTemplate(transactionManager);
+        tx.execute(status -> saveMembers(10));
+        List<BulkProgress> progress = new ArrayList<>();
+        try {
+            memberBulkRepository.delete(member.age.goe(4), 4, chunk -> {
+                progress.add(chunk);
+                throw new RuntimeException("stop");         //@Repository 예외 변환 대상이 아닌 예외
+            });
+        } catch (RuntimeException e) {
+            //첫 청크는 이미 커밋됐다
+        }
+
+        // when
+        long resumed = memberBulkRepository.delete(member.age.goe(4), 4, progress.get(0).getLastId(), progress::add);
+
+        // then
+        assertThat(resumed).isEqualTo(2);
+        assertThat(progress).extracting("affected").containsExactly(4L, 2L);
+        TeamStatsDto stats = tx.execute(status -> teamRepository.findTeamStats(PageRequest.of(0, 10)).getContent().get(0));
+        assertThat(stats.getMemberCount()).isEqualTo(4);
+    }
+
+    @Test
+    @DisplayName("읽기/쓰기 트랜잭션 안에서는 청크를 실행하지 않고 바로 실패, 호출한 쪽 변경은 그대로")
+    public void insideReadWriteTransaction() {
+        // given
+        TransactionTemplate tx = new TransactionTemplate(transactionManager);
+        Long firstId = tx.execute(status -> saveMembers(10));
+
+        // when
+        tx.executeWithoutResult(status -> {
+            Member loaded = em.find(Member.class, firstId);
+            loaded.setUsername("changed");                  //아직 flush 안 된 변경
+
+            assertThatThrownBy(() -> memberBulkRepository.update(member.age.lt(5),
+                    clause -> clause.set(member.age, member.age.add(100)), 3, chunk -> {
+                    }))
+                    .isInstanceOf(InvalidDataAccessApiUsageException.class)    //@Repository 예외 변환
+                    .hasCauseInstanceOf(IllegalStateException.class);
+
+            // then
+            assertThat(em.contains(loaded)).isTrue();
+        });
+
+        Member reloaded = tx.execute(status -> em.find(Member.class, firstId));
+        assertThat(reloaded.getUsername()).isEqualTo("changed");
+        assertThat(reloaded.getAge()).isEqualTo(0);
+    }
+
+    private Long saveMembers(int count) {
+        Team team = new Team("teamA");
+        em.persist(team);
+        Long firstId = null;
+        for (int i = 0; i < count; i++) {
+            Member saved = new Member("member" + i, i, team);
+            em.persist(saved);
+            if (firstId == null) {
+                firstId = saved.getId();
+            }
+        }
+        return firstId;
+    }
+}
@@ -13,6 +13,7 @@ import study.querydsl.entity.Team;
 
 import javax.persistence.EntityManager;
 
+import java.util.ArrayList;
 import java.util.List;
 
 import static org.assertj.core.api.Assertions.*;
@@ -75,5 +76,58 @@ class MemberJpaRepositoryTest {
         assertThat(result).extracting("username").containsExactly("member4");
     }
 
+    @Test
+    @DisplayName("스트리밍 조회")
+    public void streamSearchTest() {
+        // given
+        Team teamA = new Team("teamA");
+        Team teamB = new Team("teamB");
+        em.persist(teamB);
+        em.persist(teamA);
+
+        em.persist(new Member("member1", 10, teamA));
+        em.persist(new Member("member2", 20, teamA));
+        em.persist(new Member("member3", 30, teamB));
+        em.persist(new Member("member4", 40, teamB));
+
+        MemberSearchCondition condition = new MemberSearchCondition();
+        condition.setTeamName("teamB");
+
+        // when
+        List<MemberTeamDto> result = new ArrayList<>();
+        long count = memberJpaRepository.streamSearch(condition, result::add);
 
-}
\ No newline at end of file
+        // then
+        assertThat(count).isEqualTo(2);
+        assertThat(result).extracting("username").containsExactlyInAnyOrder("member3", "member4");
+    }
+
+    @Test
+    @DisplayName("id 목록 조회는 요청한 순서를 지키고 없는 id 는 뺀다")
+    public void findAllByIdsTest() {
+        // given
+        Team teamA = new Team("teamA");
+        em.persist(teamA);
+
+        Member member1 = new Member("member1", 10, teamA);
+        Member member2 = new Member("member2", 20, teamA);
+        Member member3 = new Member("member3", 30);
+        em.persist(member1);
+        em.persist(member2);
+        em.persist(member3);
+        em.flush();
+        em.clear();
+
+        //member2 는 영속성 컨텍스트에서, 나머지는 쿼리로
+        memberJpaRepository.findById(member2.getId());
+
+        // when
+        List<Member> result = memberJpaRepository.findAllByIds(
+                List.of(member3.getId(), -1L, member1.getId(), member2.getId(), member3.getId()));
+        List<MemberTeamDto> dtos = memberJpaRepository.findMemberTeamsByIds(List.of(member2.getId(), member3.getId()));
+
+        // then
+        assertThat(result).extracting("username").containsExactly("member3", "member1", "member2");
+        assertThat(dtos).extracting("teamName").containsExactly("teamA", null);
+    }
+}
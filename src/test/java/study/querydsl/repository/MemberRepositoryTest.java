@@ -7,6 +7,7 @@ import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.transaction.annotation.Transactional;
+import study.querydsl.dto.CursorSlice;
 import study.querydsl.dto.MemberSearchCondition;
 import study.querydsl.dto.MemberTeamDto;
 import study.querydsl.entity.Member;
@@ -85,4 +86,97 @@ class MemberRepositoryTest {
         assertThat(result.getContent()).extracting("username").containsExactly("member1", "member2", "member3");
     }
 
-}
\ No newline at end of file
+    @Test
+    @DisplayName("count 쿼리 최적화 페이지 구현")
+    public void searchPageComplex() {
+        // given
+        Team teamA = new Team("teamA");
+        Team teamB = new Team("teamB");
+        em.persist(teamB);
+        em.persist(teamA);
+
+        Member member1 = new Member("member1", 10, teamA);
+        Member member2 = new Member("member2", 20, teamA);
+        Member member3 = new Member("member3", 30, teamB);
+        Member member4 = new Member("member4", 40, teamB);
+        em.persist(member1);
+        em.persist(member2);
+        em.persist(member3);
+        em.persist(member4);
+
+        MemberSearchCondition condition = new MemberSearchCondition();
+        MemberSearchCondition teamCondition = new MemberSearchCondition();
+        teamCondition.setTeamName("teamB");
+
+        // when
+        Page<MemberTeamDto> result = memberRepository.searchPageComplex(condition, PageRequest.of(0, 3));
+        Page<MemberTeamDto> teamResult = memberRepository.searchPageComplex(teamCondition, PageRequest.of(0, 3));
+
+        // then
+        assertThat(result.getTotalElements()).isEqualTo(4);
+        assertThat(result.getContent()).extracting("username").containsExactly("member1", "member2", "member3");
+        assertThat(teamResult.getTotalElements()).isEqualTo(2);
+        assertThat(teamResult.getContent()).extracting("username").containsExactly("member3", "member4");
+    }
+
+    @Test
+    @DisplayName("키셋 페이징")
+    public void searchSlice() {
+        // given
+        Team teamA = new Team("teamA");
+        Team teamB = new Team("teamB");
+        em.persist(teamB);
+        em.persist(teamA);
+
+        Member member1 = new Member("member1", 10, teamA);
+        Member member2 = new Member("member2", 20, teamA);
+        Member member3 = new Member("member3", 30, teamB);
+        Member member4 = new Member("member4", 40, teamB);
+        em.persist(member1);
+        em.persist(member2);
+        em.persist(member3);
+        em.persist(member4);
+
+        MemberSearchCondition condition = new MemberSearchCondition();
+
+        // when
+        CursorSlice<MemberTeamDto> first = memberRepository.searchSlice(condition, null, 3);
+        CursorSlice<MemberTeamDto> second = memberRepository.searchSlice(condition, first.getNextCursor(), 3);
+
+        // then
+        assertThat(first.isHasNext()).isTrue();
+        assertThat(first.getContent()).extracting("username").containsExactly("member1", "member2", "member3");
+        assertThat(second.isHasNext()).isFalse();
+        assertThat(second.getNextCursor()).isNull();
+        assertThat(second.getContent()).extracting("username").containsExactly("member4");
+    }
+
+    @Test
+    @DisplayName("회원명 앞부분 / 부분 일치 검색")
+    public void searchUsernamePrefixAndContains() {
+        // given
+        Team teamA = new Team("teamA");
+        em.persist(teamA);
+        em.persist(new Member("alice", 10, teamA));
+        em.persist(new Member("malice", 20, teamA));
+        em.persist(new Member("bob", 30, teamA));
+        em.persist(new Member("al_x", 40, teamA));
+
+        MemberSearchCondition prefix = new MemberSearchCondition();
+        prefix.setUsernamePrefix("al");
+        MemberSearchCondition contains = new MemberSearchCondition();
+        contains.setUsernameContains("lic");
+        MemberSearchCondition wildcard = new MemberSearchCondition();
+        wildcard.setUsernameContains("_");
+
+        // when
+        List<MemberTeamDto> prefixResult = memberRepository.search(prefix);
+        Page<MemberTeamDto> containsResult = memberRepository.searchPageComplex(contains, PageRequest.of(0, 10));
+        List<MemberTeamDto> wildcardResult = memberRepository.search(wildcard);
+
+        // then
+        assertThat(prefixResult).extracting("username").containsExactlyInAnyOrder("alice", "al_x");
+        assertThat(containsResult.getContent()).extracting("username").containsExactlyInAnyOrder("alice", "malice");
+        assertThat(wildcardResult).extracting("username").containsExactly("al_x");   //like 특수문자는 이스케이프
+    }
+}
@@ -0,0 +1,114 @@
+package study.querydsl.repository;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.transaction.annotation.Transactional;
+import study.querydsl.dto.MemberSearchCondition;
+import study.querydsl.entity.Member;
+import study.querydsl.entity.Team;
+
+import javax.persistence.EntityManager;
+import java.util.List;
+
+import static study.querydsl.monitoring.QueryCountAssertions.assertMaxQueryCount;
+import static study.querydsl.monitoring.QueryCountAssertions.assertQueryCount;
+
+/**
+ * 리포지토리 메서드별 SQL 수 예산. 예산을 넘기는 변경(N+1, 불필요한 count 등)은 여기서 깨진다.
+ */
+@SpringBootTest
+@Transactional
+class QueryBudgetTest {
+
+    @Autowired
+    EntityManager em;
+    @Autowired
+    MemberRepository memberRepository;
+    @Autowired
+    MemberJpaRepository memberJpaRepository;
+
+    Long member1Id;
+
+    @BeforeEach
+    public void before() {
+        Team teamA = new Team("teamA");
+        Team teamB = new Team("teamB");
+        em.persist(teamA);
+        em.persist(teamB);
+
+        Member member1 = new Member("member1", 10, teamA);
+        em.persist(member1);
+        em.persist(new Member("member2", 20, teamA));
+        em.persist(new Member("member3", 30, teamB));
+        em.persist(new Member("member4", 40, teamB));
+        member1Id = member1.getId();
+
+        //insert 가 측정에 섞이지 않도록
+        em.flush();
+        em.clear();
+    }
+
+    @Test
+    @DisplayName("MemberRepositoryCustom 예산")
+    public void memberRepositoryCustom() {
+        MemberSearchCondition condition = new MemberSearchCondition();
+        MemberSearchCondition teamCondition = new MemberSearchCondition();
+        teamCondition.setTeamName("teamA");
+
+        assertQueryCount(1, () -> memberRepository.search(teamCondition));
+
+        //content + count
+        assertQueryCount(2, () -> memberRepository.searchPageSimple(condition, PageRequest.of(0, 3)));
+        assertQueryCount(2, () -> memberRepository.searchPageComplex(condition, PageRequest.of(0, 3)));
+        assertQueryCount(2, () -> memberRepository.searchPageComplex(condition, PageRequest.of(0, 3, Sort.by("age"))));
+
+        //첫 페이지가 pageSize 보다 작으면 count 생략
+        assertQueryCount(1, () -> memberRepository.searchPageSimple(condition, PageRequest.of(0, 10)));
+        assertQueryCount(1, () -> memberRepository.searchPageComplex(teamCondition, PageRequest.of(0, 10)));
+
+        assertQueryCount(1, () -> memberRepository.searchSlice(condition, null, 3));
+
+        //읽기/쓰기 트랜잭션 안에서는 UsernameLookupIndex 대신 DB 를 한 번 본다
+        assertQueryCount(1, () -> memberRepository.findByUsername("member1"));
+    }
+
+    @Test
+    @DisplayName("MemberJpaRepository 예산")
+    public void memberJpaRepository() {
+        MemberSearchCondition condition = new MemberSearchCondition();
+        condition.setTeamName("teamB");
+
+        //pooled-lo 시퀀스 블록을 다 쓴 경우에만 시퀀스 조회 1번
+        assertMaxQueryCount(1, () -> {
+            memberJpaRepository.save(new Member("member5", 50));
+            return null;
+        });
+        em.flush();
+        em.clear();
+
+        assertQueryCount(1, () -> memberJpaRepository.findById(member1Id));
+        //이미 영속성 컨텍스트에 있으면 SQL 없음
+        assertQueryCount(0, () -> memberJpaRepository.findById(member1Id));
+
+        assertQueryCount(1, () -> memberJpaRepository.findAll());
+        assertQueryCount(1, () -> memberJpaRepository.findAll_QueryDsl());
+        assertQueryCount(1, () -> memberJpaRepository.findByUsername("member1"));
+        assertQueryCount(1, () -> memberJpaRepository.findByUsername_QueryDsl("member1"));
+        assertQueryCount(1, () -> memberJpaRepository.searchByBuilder(condition));
+        assertQueryCount(1, () -> memberJpaRepository.search(condition));
+        assertQueryCount(1, () -> memberJpaRepository.streamSearch(condition, dto -> {
+        }));
+
+        em.clear();
+        memberJpaRepository.findById(member1Id);
+        //영속성 컨텍스트에 없는 id 만 IN 쿼리 하나로
+        assertQueryCount(1, () -> memberJpaRepository.findAllByIds(List.of(member1Id, member1Id + 1, -1L)));
+        //전부 영속성 컨텍스트에 있으면 SQL 없음
+        assertQueryCount(0, () -> memberJpaRepository.findAllByIds(List.of(member1Id + 1, member1Id)));
+    }
+}
@@ -0,0 +1,58 @@
+package study.querydsl.repository;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.transaction.annotation.Transactional;
+import study.querydsl.dto.TeamMembersDto;
+import study.querydsl.entity.Member;
+import study.querydsl.entity.Team;
+
+import javax.persistence.EntityManager;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static study.querydsl.monitoring.QueryCountAssertions.assertQueryCount;
+
+@SpringBootTest
+@Transactional
+class TeamRepositoryTest {
+
+    @Autowired
+    EntityManager em;
+    @Autowired
+    TeamRepository teamRepository;
+
+    @Test
+    @DisplayName("팀 페이지 + 회원 수 / 팀별 앞 회원을 팀 수와 상관없는 쿼리 수로")
+    public void findTeamsWithMembers() {
+        // given
+        Team teamA = new Team("teamA");
+        Team teamB = new Team("teamB");
+        Team teamC = new Team("teamC");
+        em.persist(teamA);
+        em.persist(teamB);
+        em.persist(teamC);
+        em.persist(new Member("member1", 10, teamA));
+        em.persist(new Member("member2", 20, teamA));
+        em.persist(new Member("member3", 30, teamA));
+        em.persist(new Member("member4", 40, teamB));
+        em.flush();
+        em.clear();
+
+        // when : 팀 페이지, count, 팀별 회원 수 group by, 팀별 앞 memberLimit 명
+        Page<TeamMembersDto> result = assertQueryCount(4,
+                () -> teamRepository.findTeamsWithMembers(PageRequest.of(0, 2), 2));
+
+        // then
+        assertThat(result.getTotalElements()).isEqualTo(3);
+        assertThat(result.getContent()).extracting("teamName").containsExactly("teamA", "teamB");
+
+        TeamMembersDto first = result.getContent().get(0);
+        assertThat(first.getMemberCount()).isEqualTo(3);
+        assertThat(first.getMembers()).extracting("username").containsExactly("member1", "member2");
+        assertThat(result.getContent().get(1).getMembers()).extracting("username").containsExactly("member4");
+    }
+}
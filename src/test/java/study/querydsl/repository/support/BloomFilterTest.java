@@ -0,0 +1,54 @@
+package study.querydsl.repository.support;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class BloomFilterTest {
+
+    @Test
+    @DisplayName("넣은 값은 항상 true, 넣지 않은 값의 false positive 는 fpp 근처")
+    public void noFalseNegatives() {
+        // given
+        BloomFilter filter = new BloomFilter(10_000, 0.01);
+        for (int i = 0; i < 10_000; i++) {
+            filter.put("member" + i);
+        }
+
+        // when
+        int falsePositives = 0;
+        for (int i = 0; i < 10_000; i++) {
+            if (filter.mightContain("nobody" + i)) {
+                falsePositives++;
+            }
+        }
+
+        // then
+        for (int i = 0; i < 10_000; i++) {
+            assertThat(filter.mightContain("member" + i)).isTrue();
+        }
+        assertThat(falsePositives).isLessThan(300);   //기대값 100
+        assertThat(filter.getHashCount()).isEqualTo(7);
+        assertThat(filter.isSaturated()).isFalse();
+    }
+
+    @Test
+    @DisplayName("예상 개수를 넘기면 saturated")
+    public void saturated() {
+        // given
+        BloomFilter filter = new BloomFilter(2, 0.01);
+
+        // when
+        filter.put("a");
+        filter.put("b");
+        boolean beforeOverflow = filter.isSaturated();
+        filter.put("c");
+
+        // then
+        assertThat(beforeOverflow).isFalse();
+        assertThat(filter.isSaturated()).isTrue();
+        assertThat(filter.mightContain("a")).isTrue();
+        assertThat(filter.mightContain("c")).isTrue();
+    }
+}
@@ -0,0 +1,74 @@
+package study.querydsl.repository.support;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.annotation.Transactional;
+import study.querydsl.dto.MemberSearchCondition;
+import study.querydsl.dto.MemberTeamDto;
+import study.querydsl.entity.Member;
+import study.querydsl.entity.Team;
+
+import javax.persistence.EntityManager;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest
+@Transactional
+class MemberSearchQueryCacheTest {
+
+    @Autowired
+    EntityManager em;
+    @Autowired
+    MemberSearchQueryCache searchQueryCache;
+
+    @Test
+    @DisplayName("조건 모양")
+    public void shape() {
+        MemberSearchCondition condition = new MemberSearchCondition();
+        condition.setTeamName("teamB");
+        condition.setAgeGoe(35);
+
+        int shape = MemberSearchQueryCache.shapeOf(condition);
+
+        assertThat(shape).isEqualTo(MemberSearchQueryCache.TEAM_NAME | MemberSearchQueryCache.AGE_GOE);
+        assertThat(MemberSearchQueryCache.describe(shape)).isEqualTo("teamName+ageGoe");
+        assertThat(MemberSearchQueryCache.describe(0)).isEqualTo("none");
+    }
+
+    @Test
+    @DisplayName("같은 모양은 값이 달라도 캐시된 JPQL 을 재사용")
+    public void reuseCompiledQuery() {
+        // given
+        Team teamA = new Team("teamA");
+        Team teamB = new Team("teamB");
+        em.persist(teamA);
+        em.persist(teamB);
+        em.persist(new Member("member1", 10, teamA));
+        em.persist(new Member("member2", 20, teamA));
+        em.persist(new Member("member3", 30, teamB));
+        em.persist(new Member("member4", 40, teamB));
+
+        MemberSearchCondition first = new MemberSearchCondition();
+        first.setTeamName("teamA");
+        first.setAgeLoe(15);
+        MemberSearchCondition second = new MemberSearchCondition();
+        second.setTeamName("teamB");
+        second.setAgeLoe(30);
+        String shape = MemberSearchQueryCache.describe(MemberSearchQueryCache.shapeOf(first));
+
+        // when
+        List<MemberTeamDto> firstResult = searchQueryCache.search(first);
+        long hitsBefore = searchQueryCache.stats().get(shape).getHits();
+        List<MemberTeamDto> secondResult = searchQueryCache.search(second);
+        long count = searchQueryCache.count(second);
+
+        // then
+        assertThat(firstResult).extracting("username").containsExactly("member1");
+        assertThat(secondResult).extracting("username").containsExactly("member3");
+        assertThat(count).isEqualTo(1);
+        assertThat(searchQueryCache.stats().get(shape).getHits()).isEqualTo(hitsBefore + 2);
+    }
+}
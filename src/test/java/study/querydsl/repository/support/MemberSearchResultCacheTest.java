@@ -0,0 +1,140 @@
+package study.querydsl.repository.support;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
+import study.querydsl.dto.MemberSearchCondition;
+import study.querydsl.dto.MemberTeamDto;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class MemberSearchResultCacheTest {
+
+    MemberSearchResultCache resultCache = new MemberSearchResultCache(new SearchResultCacheProperties(), new SimpleMeterRegistry(),
+            true, () -> false);
+
+    @Test
+    @DisplayName("같은 뜻의 조건은 같은 항목을 쓰고, 바뀐 행에 걸리는 조건만 무효화")
+    public void preciseInvalidation() {
+        // given
+        AtomicInteger loads = new AtomicInteger();
+        MemberSearchCondition teamA = condition("teamA", 20, 30);
+        MemberSearchCondition sameTeamA = condition("teamA", 20, 30);
+        sameTeamA.setUsername("");                          //빈 문자열은 조건 없음
+        MemberSearchCondition teamB = condition("teamB", null, null);
+
+        // when
+        resultCache.list(teamA, () -> load(loads));
+        resultCache.list(sameTeamA, () -> load(loads));
+        resultCache.list(teamB, () -> load(loads));
+
+        //teamA 의 40살 회원 변경은 ageLoe 30 조건에 걸리지 않는다
+        resultCache.memberChanged(null, new MemberRow("member9", 40, 1L, "teamA"));
+        resultCache.list(teamA, () -> load(loads));
+        int loadsBeforeMatchingChange = loads.get();
+
+        //teamB 로 옮겨 간 회원은 teamB 조건에 걸린다
+        resultCache.memberChanged(new MemberRow("member1", 25, 1L, "teamA"), new MemberRow("member1", 25, 2L, "teamB"));
+        resultCache.list(teamB, () -> load(loads));
+
+        // then
+        assertThat(loadsBeforeMatchingChange).isEqualTo(2);
+        assertThat(loads.get()).isEqualTo(3);
+        assertThat(resultCache.list(teamA, () -> load(loads))).hasSize(1);   //teamA 항목도 무효화되어 다시 읽음
+        assertThat(loads.get()).isEqualTo(4);
+    }
+
+    @Test
+    @DisplayName("페이지는 Pageable 까지 키에 포함")
+    public void page() {
+        // given
+        AtomicInteger loads = new AtomicInteger();
+        MemberSearchCondition condition = condition("teamA", null, null);
+
+        // when
+        Page<MemberTeamDto> first = resultCache.page(condition, PageRequest.of(0, 10), () -> loadPage(loads, 0));
+        Page<MemberTeamDto> firstAgain = resultCache.page(condition, PageRequest.of(0, 10), () -> loadPage(loads, 0));
+        resultCache.page(condition, PageRequest.of(1, 10), () -> loadPage(loads, 1));
+
+        // then
+        assertThat(loads.get()).isEqualTo(2);
+        assertThat(firstAgain.getTotalElements()).isEqualTo(first.getTotalElements());
+        assertThat(firstAgain.getContent()).isEqualTo(first.getContent());
+    }
+
+    @Test
+    @DisplayName("한 트랜잭션의 변경은 모아서 한 번에, 행이 너무 많으면 전체 무효화로")
+    public void batchedChanges() {
+        // given
+        AtomicInteger loads = new AtomicInteger();
+        MemberSearchCondition teamA = condition("teamA", 20, 30);
+        MemberSearchCondition teamB = condition("teamB", null, null);
+        resultCache.list(teamA, () -> load(loads));
+        resultCache.list(teamB, () -> load(loads));
+
+        // when : teamB 회원 변경 여러 건은 teamB 항목만, 상한을 넘는 변경은 전부 지운다
+        SearchResultChanges few = new SearchResultChanges();
+        few.member(null, new MemberRow("member8", 50, 2L, "teamB"));
+        few.member(new MemberRow("member9", 60, 2L, "teamB"), null);
+        resultCache.changed(few);
+        resultCache.list(teamA, () -> load(loads));
+        int loadsAfterFew = loads.get();
+
+        SearchResultChanges many = new SearchResultChanges();
+        for (int i = 0; i <= SearchResultChanges.MAX_ROWS; i++) {
+            many.member(null, new MemberRow("bulk" + i, 99, 3L, "teamC"));
+        }
+        resultCache.changed(many);
+        resultCache.list(teamA, () -> load(loads));
+
+        // then
+        assertThat(loadsAfterFew).isEqualTo(2);
+        assertThat(many.isAll()).isTrue();
+        assertThat(loads.get()).isEqualTo(3);
+    }
+
+    @Test
+    @DisplayName("single-writer 가 아니거나 replica 로 읽었을 수 있으면 캐시에 넣지 않는다")
+    public void notCachedWhenInvalidationCanBeMissed() {
+        // given
+        AtomicInteger loads = new AtomicInteger();
+        MemberSearchCondition condition = condition("teamA", null, null);
+        MemberSearchResultCache notSingleWriter = new MemberSearchResultCache(new SearchResultCacheProperties(),
+                new SimpleMeterRegistry(), false, () -> false);
+        MemberSearchResultCache replica = new MemberSearchResultCache(new SearchResultCacheProperties(),
+                new SimpleMeterRegistry(), true, () -> true);
+
+        // when
+        notSingleWriter.list(condition, () -> load(loads));
+        notSingleWriter.list(condition, () -> load(loads));
+        replica.list(condition, () -> load(loads));
+        replica.list(condition, () -> load(loads));
+
+        // then
+        assertThat(loads.get()).isEqualTo(4);
+    }
+
+    private static MemberSearchCondition condition(String teamName, Integer ageGoe, Integer ageLoe) {
+        MemberSearchCondition condition = new MemberSearchCondition();
+        condition.setTeamName(teamName);
+        condition.setAgeGoe(ageGoe);
+        condition.setAgeLoe(ageLoe);
+        return condition;
+    }
+
+    private static List<MemberTeamDto> load(AtomicInteger loads) {
+        loads.incrementAndGet();
+        return List.of(new MemberTeamDto(1L, "member1", 25, 1L, "teamA"));
+    }
+
+    private static Page<MemberTeamDto> loadPage(AtomicInteger loads, int page) {
+        loads.incrementAndGet();
+        return new PageImpl<>(load(new AtomicInteger()), PageRequest.of(page, 10), 11);
+    }
+}
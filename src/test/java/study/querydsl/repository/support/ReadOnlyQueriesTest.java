@@ -0,0 +1,73 @@
+package study.querydsl.repository.support;
+
+import org.hibernate.Session;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import study.querydsl.entity.Member;
+import study.querydsl.repository.MemberJpaRepository;
+
+import javax.persistence.EntityManager;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * 읽기 전용 트랜잭션과 읽기/쓰기 트랜잭션을 나눠 보려면 테스트 트랜잭션 없이 직접 열어야 한다.
+ */
+@SpringBootTest
+class ReadOnlyQueriesTest {
+
+    @Autowired
+    EntityManager em;
+    @Autowired
+    MemberJpaRepository memberJpaRepository;
+    @Autowired
+    PlatformTransactionManager transactionManager;
+
+    @AfterEach
+    public void cleanUp() {
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            em.createQuery("delete from Member").executeUpdate();
+            em.createQuery("delete from Team").executeUpdate();
+            em.createQuery("delete from TeamStats").executeUpdate();
+            em.createQuery("delete from ChangeLog").executeUpdate();
+        });
+    }
+
+    @Test
+    @DisplayName("읽기 전용 트랜잭션에서는 스냅샷 없는 읽기 전용 엔티티, 쓰기 트랜잭션에서는 그대로 고칠 수 있다")
+    public void readOnlyOnlyOutsideWriteTransactions() {
+        // given
+        TransactionTemplate tx = new TransactionTemplate(transactionManager);
+        tx.executeWithoutResult(status -> {
+            em.persist(new Member("member1", 10));
+            em.persist(new Member("member2", 20));
+        });
+        TransactionTemplate readOnlyTx = new TransactionTemplate(transactionManager);
+        readOnlyTx.setReadOnly(true);
+
+        // when
+        Boolean readOnlyInReadTx = readOnlyTx.execute(status -> {
+            List<Member> members = memberJpaRepository.findAll_QueryDsl();
+            Session session = em.unwrap(Session.class);
+            return members.stream().allMatch(session::isReadOnly);
+        });
+        Boolean readOnlyInWriteTx = tx.execute(status -> {
+            List<Member> members = memberJpaRepository.findAll_QueryDsl();
+            Session session = em.unwrap(Session.class);
+            members.forEach(m -> m.setAge(m.getAge() + 1));
+            return members.stream().anyMatch(session::isReadOnly);
+        });
+        List<Member> after = memberJpaRepository.findAll();
+
+        // then
+        assertThat(readOnlyInReadTx).isTrue();
+        assertThat(readOnlyInWriteTx).isFalse();
+        assertThat(after).extracting("age").containsExactlyInAnyOrder(11, 21);
+    }
+}
@@ -0,0 +1,36 @@
+package study.querydsl.repository.support;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest
+class SearchIndexAdvisorTest {
+
+    @Autowired
+    SearchIndexAdvisor searchIndexAdvisor;
+
+    @Test
+    @DisplayName("검색 모양별 실행 계획")
+    public void advise() {
+        List<SearchIndexAdvisor.PlanReport> reports = searchIndexAdvisor.advise();
+
+        assertThat(reports).hasSize(MemberSearchQueryCache.SHAPE_COUNT * 2);
+        assertThat(reports)
+                .filteredOn(report -> report.getKind().equals("content"))
+                .hasSize(MemberSearchQueryCache.SHAPE_COUNT);
+        assertThat(reports).allSatisfy(report -> {
+            assertThat(report.getSql()).startsWithIgnoringCase("select");
+            assertThat(report.getPlan()).isNotBlank();
+        });
+        //회원명 조건은 항상 idx_member_username 을 타야 한다
+        assertThat(reports)
+                .filteredOn(report -> report.getShape().contains("username"))
+                .allSatisfy(report -> assertThat(report.getFullScanTables()).doesNotContain("member"));
+    }
+}
@@ -0,0 +1,159 @@
+package study.querydsl.repository.support;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import study.querydsl.dto.TeamStatsDto;
+import study.querydsl.entity.Member;
+import study.querydsl.entity.Team;
+import study.querydsl.repository.TeamRepository;
+
+import javax.persistence.EntityManager;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * 집계는 커밋 직전에 반영되므로 롤백하는 @Transactional 테스트 대신 실제로 커밋하고 지운다.
+ */
+@SpringBootTest
+class TeamStatsEventListenerTest {
+
+    @Autowired
+    EntityManager em;
+    @Autowired
+    TeamRepository teamRepository;
+    @Autowired
+    PlatformTransactionManager transactionManager;
+
+    @AfterEach
+    public void cleanUp() {
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            em.createQuery("delete from Member").executeUpdate();
+            em.createQuery("delete from Team").executeUpdate();
+            em.createQuery("delete from TeamStats").executeUpdate();
+        });
+    }
+
+    @Test
+    @DisplayName("회원 추가 / 나이·팀 변경 / 삭제를 팀 집계에 증분 반영")
+    public void incrementalStats() {
+        // given
+        TransactionTemplate tx = new TransactionTemplate(transactionManager);
+        Long[] ids = tx.execute(status -> {
+            Team teamA = new Team("teamA");
+            Team teamB = new Team("teamB");
+            em.persist(teamA);
+            em.persist(teamB);
+            Member member1 = new Member("member1", 10, teamA);
+            Member member2 = new Member("member2", 20, teamA);
+            Member member3 = new Member("member3", 30, teamB);
+            Member member4 = new Member("member4", 40, teamB);
+            em.persist(member1);
+            em.persist(member2);
+            em.persist(member3);
+            em.persist(member4);
+            return new Long[]{member1.getId(), member2.getId(), member4.getId(), teamA.getId()};
+        });
+
+        // when : member1 은 나이 변경, member4 는 teamA 로 이동, member2 는 삭제
+        tx.executeWithoutResult(status -> {
+            em.find(Member.class, ids[0]).setAge(15);
+            em.find(Member.class, ids[2]).setTeam(em.find(Team.class, ids[3]));
+            em.remove(em.find(Member.class, ids[1]));
+        });
+        List<TeamStatsDto> stats = tx.execute(status -> teamRepository.findTeamStats(PageRequest.of(0, 10)).getContent());
+
+        // then
+        TeamStatsDto teamA = stats.get(0);
+        assertThat(teamA.getMemberCount()).isEqualTo(2);    //member1(15), member4(40)
+        assertThat(teamA.getAgeSum()).isEqualTo(55);
+        assertThat(teamA.getAgeMin()).isEqualTo(15);
+        assertThat(teamA.getAgeMax()).isEqualTo(40);
+        assertThat(teamA.getAgeAvg()).isEqualTo(27.5);
+
+        TeamStatsDto teamB = stats.get(1);
+        assertThat(teamB.getMemberCount()).isEqualTo(1);    //member3(30)
+        assertThat(teamB.getAgeMin()).isEqualTo(30);
+        assertThat(teamB.getAgeMax()).isEqualTo(30);
+    }
+
+    @Test
+    @DisplayName("롤백한 변경은 집계에 남지 않는다")
+    public void rollback() {
+        // given
+        TransactionTemplate tx = new TransactionTemplate(transactionManager);
+        Long teamId = tx.execute(status -> {
+            Team team = new Team("teamA");
+            em.persist(team);
+            em.persist(new Member("member1", 10, team));
+            return team.getId();
+        });
+
+        // when
+        tx.executeWithoutResult(status -> {
+            em.persist(new Member("member2", 20, em.find(Team.class, teamId)));
+            em.flush();
+            status.setRollbackOnly();
+        });
+        List<TeamStatsDto> stats = tx.execute(status -> teamRepository.findTeamStats(PageRequest.of(0, 10)).getContent());
+
+        // then
+        assertThat(stats).extracting("memberCount").containsExactly(1L);
+    }
+
+    @Test
+    @DisplayName("집계 행이 없는 팀에 두 트랜잭션이 동시에 첫 회원을 넣어도 둘 다 커밋되고 집계가 맞다")
+    public void concurrentFirstMembers() throws Exception {
+        // given
+        TransactionTemplate tx = new TransactionTemplate(transactionManager);
+        Long teamId = tx.execute(status -> {
+            Team team = new Team("teamA");
+            em.persist(team);
+            return team.getId();
+        });
+        CyclicBarrier flushed = new CyclicBarrier(2);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+
+        // when : 둘 다 member 를 flush 한 뒤 같이 커밋한다
+        List<Future<?>> commits = new ArrayList<>();
+        for (int age : new int[]{10, 20}) {
+            commits.add(executor.submit(() -> tx.executeWithoutResult(status -> {
+                em.persist(new Member("member" + age, age, em.find(Team.class, teamId)));
+                em.flush();
+                await(flushed);
+            })));
+        }
+        for (Future<?> commit : commits) {
+            commit.get(30, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+        List<TeamStatsDto> stats = tx.execute(status -> teamRepository.findTeamStats(PageRequest.of(0, 10)).getContent());
+
+        // then
+        TeamStatsDto teamA = stats.get(0);
+        assertThat(teamA.getMemberCount()).isEqualTo(2);
+        assertThat(teamA.getAgeSum()).isEqualTo(30);
+        assertThat(teamA.getAgeMin()).isEqualTo(10);
+        assertThat(teamA.getAgeMax()).isEqualTo(20);
+    }
+
+    private static void await(CyclicBarrier barrier) {
+        try {
+            barrier.await(10, TimeUnit.SECONDS);
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package study.querydsl.repository.support;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TrigramIndexTest {
+
+    @Test
+    @DisplayName("trigram 교집합으로 후보 id 찾기")
+    public void candidates() {
+        // given
+        TrigramIndex index = new TrigramIndex();
+        index.add(3, "malice");
+        index.add(1, "alice");
+        index.add(2, "bob");
+        index.add(4, "alpine");
+
+        // when
+        long[] lic = index.candidates("lic", 100);
+        long[] alic = index.candidates("alic", 100);
+        long[] none = index.candidates("xyz", 100);
+        long[] tooShort = index.candidates("al", 100);
+
+        // then
+        assertThat(lic).containsExactly(1, 3);
+        assertThat(alic).containsExactly(1, 3);
+        assertThat(none).isEmpty();
+        assertThat(tooShort).isNull();
+    }
+
+    @Test
+    @DisplayName("이름 변경 / 삭제 반영, 후보가 너무 많으면 null")
+    public void updateAndLimit() {
+        // given
+        TrigramIndex index = new TrigramIndex();
+        index.add(1, "alice");
+        index.add(2, "alicia");
+
+        // when
+        index.remove(1, "alice");
+        index.add(1, "bob");
+        index.remove(2, "alicia");
+
+        // then
+        assertThat(index.candidates("ali", 100)).isEmpty();
+        assertThat(index.candidates("bob", 100)).containsExactly(1);
+
+        for (long id = 10; id < 20; id++) {
+            index.add(id, "member" + id);
+        }
+        assertThat(index.candidates("mem", 5)).isNull();
+        assertThat(index.candidates("mem", 10)).hasSize(10);
+    }
+}
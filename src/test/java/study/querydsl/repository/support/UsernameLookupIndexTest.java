@@ -0,0 +1,149 @@
+package study.querydsl.repository.support;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import study.querydsl.entity.Member;
+import study.querydsl.repository.MemberJpaRepository;
+import study.querydsl.repository.MemberRepository;
+
+import javax.persistence.EntityManager;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static study.querydsl.monitoring.QueryCountAssertions.assertQueryCount;
+
+/**
+ * 색인은 커밋된 변경만 반영하므로 롤백하는 @Transactional 테스트 대신 실제로 커밋하고 지운다.
+ */
+@SpringBootTest
+class UsernameLookupIndexTest {
+
+    @Autowired
+    EntityManager em;
+    @Autowired
+    MemberJpaRepository memberJpaRepository;
+    @Autowired
+    MemberRepository memberRepository;
+    @Autowired
+    UsernameLookupIndex usernameLookupIndex;
+    @Autowired
+    PlatformTransactionManager transactionManager;
+
+    @BeforeEach
+    public void waitForBuild() throws InterruptedException {
+        //기동 시 빌드는 별도 스레드에서 돈다
+        for (int i = 0; i < 100 && !usernameLookupIndex.isReady(); i++) {
+            Thread.sleep(100);
+        }
+        assertThat(usernameLookupIndex.isReady()).isTrue();
+    }
+
+    @AfterEach
+    public void cleanUp() {
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            em.createQuery("delete from Member").executeUpdate();
+            em.createQuery("delete from Team").executeUpdate();
+            em.createQuery("delete from TeamStats").executeUpdate();
+            em.createQuery("delete from ChangeLog").executeUpdate();
+        });
+    }
+
+    @Test
+    @DisplayName("없는 이름은 SQL 없이, 있는 이름은 PK 조회 한 번으로")
+    public void lookup() {
+        // given
+        TransactionTemplate tx = new TransactionTemplate(transactionManager);
+        Long memberId = tx.execute(status -> {
+            Member member1 = new Member("lookup1", 10);
+            em.persist(member1);
+            em.persist(new Member("lookup2", 20));
+            return member1.getId();
+        });
+
+        // when
+        List<Member> missing = assertQueryCount(0, () -> memberJpaRepository.findByUsername("nobody"));
+        List<Member> missingQuerydsl = assertQueryCount(0, () -> memberJpaRepository.findByUsername_QueryDsl("nobody"));
+        List<Member> missingData = assertQueryCount(0, () -> memberRepository.findByUsername("nobody"));
+        List<Member> found = assertQueryCount(1, () -> memberRepository.findByUsername("lookup1"));
+
+        // then
+        assertThat(missing).isEmpty();
+        assertThat(missingQuerydsl).isEmpty();
+        assertThat(missingData).isEmpty();
+        assertThat(found).extracting("id").containsExactly(memberId);
+    }
+
+    @Test
+    @DisplayName("커밋된 이름 변경 / 삭제를 반영")
+    public void committedChanges() {
+        // given
+        TransactionTemplate tx = new TransactionTemplate(transactionManager);
+        Long memberId = tx.execute(status -> {
+            Member member1 = new Member("before", 10);
+            em.persist(member1);
+            return member1.getId();
+        });
+
+        // when
+        tx.executeWithoutResult(status -> em.find(Member.class, memberId).setUsername("after"));
+        List<Member> oldName = memberJpaRepository.findByUsername("before");
+        List<Member> newName = memberJpaRepository.findByUsername("after");
+
+        tx.executeWithoutResult(status -> em.remove(em.find(Member.class, memberId)));
+        //맵에서 빠졌으므로 filter 를 통과해도 SQL 은 없다
+        List<Member> deleted = assertQueryCount(0, () -> memberJpaRepository.findByUsername("after"));
+
+        // then
+        assertThat(oldName).isEmpty();
+        assertThat(newName).extracting("id").containsExactly(memberId);
+        assertThat(deleted).isEmpty();
+    }
+
+    @Test
+    @DisplayName("롤백된 insert 는 색인에 들어가지 않고, 읽기/쓰기 트랜잭션 안에서는 DB 를 본다")
+    public void rollbackAndWriteTransaction() {
+        // given
+        TransactionTemplate tx = new TransactionTemplate(transactionManager);
+        tx.executeWithoutResult(status -> {
+            em.persist(new Member("rolledBack", 10));
+            status.setRollbackOnly();
+        });
+
+        // when
+        List<Member> rolledBack = memberJpaRepository.findByUsername("rolledBack");
+        List<Member> uncommitted = tx.execute(status -> {
+            em.persist(new Member("uncommitted", 10));
+            List<Member> result = memberJpaRepository.findByUsername("uncommitted");
+            status.setRollbackOnly();
+            return result;
+        });
+
+        // then
+        assertThat(rolledBack).isEmpty();
+        assertThat(uncommitted).hasSize(1);
+        assertThat(usernameLookupIndex.lookup("rolledBack")).isEmpty();
+    }
+
+    @Test
+    @DisplayName("single-writer 가 아니면 색인을 만들지도 쓰지도 않고 DB 로 돌아간다")
+    public void notSingleWriter() {
+        // given
+        UsernameLookupIndex index = new UsernameLookupIndex(null, transactionManager, new SimpleMeterRegistry(),
+                true, false, 1000, 0.01);
+
+        // when
+        index.buildOnStartup();
+
+        // then
+        assertThat(index.isReady()).isFalse();
+        assertThat(index.lookup("nobody")).isNull();
+        assertThat(index.find(em, "nobody")).isNull();
+    }
+}
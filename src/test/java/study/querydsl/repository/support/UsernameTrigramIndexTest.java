@@ -0,0 +1,73 @@
+package study.querydsl.repository.support;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import study.querydsl.dto.MemberSearchCondition;
+import study.querydsl.dto.MemberTeamDto;
+import study.querydsl.entity.Member;
+import study.querydsl.repository.MemberRepository;
+
+import javax.persistence.EntityManager;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * 색인 밖에서 들어온 행이 검색 결과에서 빠지지 않는지 본다. 커밋해야 하므로 실제로 커밋하고 지운다.
+ * 기본 설정(single-writer false) 으로 띄운다.
+ */
+@SpringBootTest(properties = "querydsl.username-index.single-writer=false")
+class UsernameTrigramIndexTest {
+
+    @Autowired
+    EntityManager em;
+    @Autowired
+    MemberRepository memberRepository;
+    @Autowired
+    UsernameTrigramIndex usernameTrigramIndex;
+    @Autowired
+    PlatformTransactionManager transactionManager;
+
+    @AfterEach
+    public void cleanUp() {
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            em.createQuery("delete from Member").executeUpdate();
+            em.createQuery("delete from Team").executeUpdate();
+            em.createQuery("delete from TeamStats").executeUpdate();
+            em.createQuery("delete from ChangeLog").executeUpdate();
+        });
+    }
+
+    @Test
+    @DisplayName("네이티브 SQL 로 들어온 회원도 usernameContains 검색에 나온다")
+    public void insertedBehindIndex() {
+        // given : 하나는 JPA 로, 하나는 이벤트 없이 네이티브 SQL 로
+        TransactionTemplate tx = new TransactionTemplate(transactionManager);
+        Long nativeId = tx.execute(status -> {
+            em.persist(new Member("trigramJpa", 10));
+            long id = ((Number) em.createNativeQuery("select next value for member_seq").getSingleResult()).longValue();
+            em.createNativeQuery("insert into member (member_id, username, age) values (?, 'trigramNative', 20)")
+                    .setParameter(1, id)
+                    .executeUpdate();
+            return id;
+        });
+
+        MemberSearchCondition condition = new MemberSearchCondition();
+        condition.setUsernameContains("rigram");
+
+        // when
+        List<MemberTeamDto> result = memberRepository.searchPageComplex(condition, PageRequest.of(0, 10)).getContent();
+
+        // then
+        assertThat(result).extracting("username").containsExactlyInAnyOrder("trigramJpa", "trigramNative");
+        assertThat(result).extracting("memberId").contains(nativeId);
+        assertThat(usernameTrigramIndex.isReady()).isFalse();
+        assertThat(usernameTrigramIndex.lookup("rigram")).isNull();
+    }
+}